@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ROWS rows of random facts, one column per variable, through ColumnarEvaluator with both kernels, against the
+ * same rows one at a time through the CompiledExpression (the row's facts gathered into its trueMask first, as a
+ * caller with columns would have to). scores are per row, so they compare directly.
+ *
+ * the vector kernel needs mvn -Pvector,benchmarks package, the forks add the module themselves
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ColumnarBenchmark {
+    static final int ROWS = 1 << 20;
+
+    @Param({"16", "64"})
+    int size;
+
+    Object compiled;
+    Object columnar;
+    Object scalar, vector;
+    long[][] columns;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object tree = (Object) Engine.NEW_TREE.invokeExact(Expressions.balanced(0, size, 0));
+        compiled = (Object) Engine.COMPILE.invokeExact(tree);
+        columnar = (Object) Engine.COLUMNAR.invokeExact(tree);
+        scalar = (Object) Engine.SCALAR_KERNEL.invokeExact();
+        vector = (Object) Engine.VECTOR_KERNEL.invokeExact();
+        if (vector == null) throw new IllegalStateException("No vector kernel, build with mvn -Pvector,benchmarks package");
+        SplittableRandom random = new SplittableRandom(23);
+        columns = new long[size][ROWS / 64];
+        for (long[] column : columns) {
+            for (int i = 0; i < column.length; i++) column[i] = random.nextLong();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long rowByRow() throws Throwable {
+        long trueCount = 0;
+        for (int row = 0; row < ROWS; row++) {
+            long trueMask = 0;
+            for (int v = 0; v < size; v++) trueMask |= ((columns[v][row >>> 6] >>> row) & 1) << v;
+            if ((byte) Engine.EVALUATE_COMPILED.invokeExact(compiled, trueMask) == 1) trueCount++;
+        }
+        return trueCount;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Object columnarScalar() throws Throwable {
+        return (Object) Engine.EVALUATE_COLUMNS.invokeExact(columnar, columns, (long) ROWS, scalar);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Object columnarVector() throws Throwable {
+        return (Object) Engine.EVALUATE_COLUMNS.invokeExact(columnar, columns, (long) ROWS, vector);
+    }
+}
@@ -0,0 +1,111 @@
+package benchmarks;
+
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*
+ * The way into the program from here.
+ *
+ * JMH refuses benchmarks in the default package and Java doesn't let a named package name a default package class,
+ * so the benchmarks can't just call new LogicTree(...). Instead every entry point is looked up once as a static final
+ * MethodHandle, which the JIT treats as a constant and inlines, so invokeExact costs about what the direct call would.
+ * everything is typed as Object on this side.
+ * */
+final class Engine {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> LOGIC_TREE = load("LogicTree");
+    static final Class<?> COMPILED_EXPRESSION = load("CompiledExpression");
+    static final Class<?> TRUTH_TABLE_WRITER = load("TruthTableWriter");
+    static final Class<?> CONDITIONAL_VALIDITY = load("ConditionalValidity");
+    static final Class<?> COLUMNAR_EVALUATOR = load("ColumnarEvaluator");
+    static final Class<?> COLUMN_KERNEL = load("ColumnKernel");
+
+    // (String) -> LogicTree
+    static final MethodHandle NEW_TREE = constructor(LOGIC_TREE, String.class);
+    // (String, String[]) -> LogicTree
+    static final MethodHandle NEW_TREE_WITH_PREDICATES = constructor(LOGIC_TREE, String.class, String[].class);
+    // (LogicTree) -> ConditionalValidity
+    static final MethodHandle EVALUATE = virtual(LOGIC_TREE, "evaluate", CONDITIONAL_VALIDITY);
+    // (LogicTree) -> CompiledExpression
+    static final MethodHandle COMPILE = virtual(LOGIC_TREE, "compile", COMPILED_EXPRESSION);
+    // (CompiledExpression, long) -> byte
+    static final MethodHandle EVALUATE_COMPILED = findVirtual(COMPILED_EXPRESSION, "evaluateCode", MethodType.methodType(byte.class, long.class))
+            .asType(MethodType.methodType(byte.class, Object.class, long.class));
+    // (CompiledExpression, byte[]) -> byte, any number of variables
+    static final MethodHandle EVALUATE_ASSIGNMENT = findVirtual(COMPILED_EXPRESSION, "evaluateCode", MethodType.methodType(byte.class, byte[].class))
+            .asType(MethodType.methodType(byte.class, Object.class, byte[].class));
+    // (LogicTree) -> byte[], the values the predicates settled on
+    static final MethodHandle GET_ASSIGNMENT = findVirtual(LOGIC_TREE, "getAssignment", MethodType.methodType(byte[].class))
+            .asType(MethodType.methodType(byte[].class, Object.class));
+    // (LogicTree, TruthTableWriter) -> void
+    static final MethodHandle WRITE_TRUTH_TABLE = findVirtual(LOGIC_TREE, "writePartialTruthTable", MethodType.methodType(void.class, TRUTH_TABLE_WRITER))
+            .asType(MethodType.methodType(void.class, Object.class, Object.class));
+    // (Writer) -> TruthTableWriter, the one printPartialTruthTable uses
+    static final MethodHandle TEXT_WRITER = staticMethod(TRUTH_TABLE_WRITER, "text", TRUTH_TABLE_WRITER, Writer.class);
+    // (LogicTree, ConditionalValidity) -> long
+    static final MethodHandle COUNT_ROWS = findVirtual(LOGIC_TREE, "countTruthTableRows", MethodType.methodType(long.class, CONDITIONAL_VALIDITY))
+            .asType(MethodType.methodType(long.class, Object.class, Object.class));
+
+    // (LogicTree) -> ColumnarEvaluator
+    static final MethodHandle COLUMNAR = virtual(LOGIC_TREE, "columnar", COLUMNAR_EVALUATOR);
+    // (ColumnarEvaluator, long[][], long, ColumnKernel) -> ColumnarEvaluator.Result
+    static final MethodHandle EVALUATE_COLUMNS = findVirtual(COLUMNAR_EVALUATOR, "evaluate",
+            MethodType.methodType(load("ColumnarEvaluator$Result"), long[][].class, long.class, COLUMN_KERNEL))
+            .asType(MethodType.methodType(Object.class, Object.class, long[][].class, long.class, Object.class));
+    // () -> ColumnKernel, vector() is null unless built with -Pvector and run with the module
+    static final MethodHandle SCALAR_KERNEL = staticMethod(COLUMN_KERNEL, "scalar", COLUMN_KERNEL);
+    static final MethodHandle VECTOR_KERNEL = staticMethod(COLUMN_KERNEL, "vector", COLUMN_KERNEL);
+
+    static Object validity(String name) {
+        for (Object value : CONDITIONAL_VALIDITY.getEnumConstants()) {
+            if (((Enum<?>) value).name().equals(name)) return value;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /////////////////   LOOKUPS    /////////////////
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(type, MethodType.methodType(void.class, parameters));
+            return handle.asType(handle.type().changeReturnType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> type, String name, Class<?> returns) {
+        return findVirtual(type, name, MethodType.methodType(returns))
+                .asType(MethodType.methodType(Object.class, Object.class));
+    }
+
+    private static MethodHandle staticMethod(Class<?> type, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findStatic(type, name, MethodType.methodType(returns, parameters));
+            return handle.asType(handle.type().changeReturnType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> type, String name, MethodType methodType) {
+        try {
+            return LOOKUP.findVirtual(type, name, methodType);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+}
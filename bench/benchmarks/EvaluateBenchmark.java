@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * evaluate() on an already built tree, against the CompiledExpression of the same tree under the same values
+ * (a byte[] assignment, the long mask only takes 64 variables)
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluateBenchmark {
+    @Param({"16", "256", "4096"})
+    int size;
+
+    Object tree;
+    Object compiled;
+    byte[] assignment;
+
+    @Setup
+    public void setUp() throws Throwable {
+        tree = (Object) Engine.NEW_TREE_WITH_PREDICATES.invokeExact(Expressions.balanced(0, size, 0), Expressions.assignHalf(size));
+        compiled = (Object) Engine.COMPILE.invokeExact(tree);
+        assignment = (byte[]) Engine.GET_ASSIGNMENT.invokeExact(tree);
+    }
+
+    @Benchmark
+    public Object tree() throws Throwable {
+        return (Object) Engine.EVALUATE.invokeExact(tree);
+    }
+
+    @Benchmark
+    public byte compiled() throws Throwable {
+        return (byte) Engine.EVALUATE_ASSIGNMENT.invokeExact(compiled, assignment);
+    }
+}
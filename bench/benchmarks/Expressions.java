@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Generated inputs, all variables are V0, V1, ... so any size can be made
+ * */
+final class Expressions {
+    /*
+     * BALANCED    ((V0&V1)?(V2&V3))...     depth grows with log2(size)
+     * CHAIN       V0&V1?V2&V3...           & and ? are right associative, so depth grows with size
+     * */
+    static String of(String shape, int size) {
+        return switch (shape) {
+            case "BALANCED" -> balanced(0, size, 0);
+            case "CHAIN" -> chain(size);
+            default -> throw new IllegalArgumentException(shape);
+        };
+    }
+
+    static String chain(int size) {
+        StringBuilder sb = new StringBuilder("V0");
+        for (int i = 1; i < size; i++) sb.append(i % 2 == 0 ? " ? " : " & ").append('V').append(i);
+        return sb.toString();
+    }
+
+    // variables [from, to), alternating & and ? by level
+    static String balanced(int from, int to, int level) {
+        if (to - from == 1) return "V" + from;
+        int middle = (from + to) >>> 1;
+        return "(" + balanced(from, middle, level + 1) + (level % 2 == 0 ? " ? " : " & ") + balanced(middle, to, level + 1) + ")";
+    }
+
+    /*
+     * V0 plus V0>V1, V1>V2, ... listed backwards, so the value has to travel the whole chain
+     * and nothing is known when the first implication is looked at
+     * */
+    static String[] implicationChain(int length) {
+        List<String> predicates = new ArrayList<>();
+        for (int i = length - 1; i > 0; i--) predicates.add("V" + (i - 1) + " > V" + i);
+        predicates.add("V0");
+        return predicates.toArray(new String[0]);
+    }
+
+    // every other variable assigned, alternating TRUE and FALSE, so evaluate() sees all four values
+    static String[] assignHalf(int size) {
+        List<String> predicates = new ArrayList<>();
+        for (int i = 0; i < size; i += 2) predicates.add((i % 4 == 0 ? "" : "~") + "V" + i);
+        return predicates.toArray(new String[0]);
+    }
+
+    private Expressions() {
+    }
+}
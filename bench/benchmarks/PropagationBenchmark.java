@@ -0,0 +1,44 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * evaluatePredicatesUntilStable on a chain of implications, V0 has to reach the last variable one link at a time.
+ * the expression is just V0 & Vn so nearly all of the time is the predicates
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PropagationBenchmark {
+    @Param({"16", "256", "4096"})
+    int length;
+
+    String expression;
+    String[] predicates;
+
+    @Setup
+    public void setUp() {
+        expression = "V0 & V" + (length - 1);
+        predicates = Expressions.implicationChain(length);
+    }
+
+    @Benchmark
+    public Object implicationChain() throws Throwable {
+        return (Object) Engine.NEW_TREE_WITH_PREDICATES.invokeExact(expression, predicates);
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * the partial truth table for 10 to 24 unknowns (1k to 16M rows). text() is what printPartialTruthTable does,
+ * minus the console, countTrue() is the same table without writing any of it
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TruthTableBenchmark {
+    @Param({"10", "14", "18", "20", "24"})
+    int unknowns;
+
+    Object tree;
+    Object isTrue;
+
+    @Setup
+    public void setUp() throws Throwable {
+        tree = (Object) Engine.NEW_TREE.invokeExact(Expressions.balanced(0, unknowns, 0));
+        isTrue = Engine.validity("TRUE");
+    }
+
+    @Benchmark
+    public Object text() throws Throwable {
+        Object writer = (Object) Engine.TEXT_WRITER.invokeExact(Writer.nullWriter());
+        Engine.WRITE_TRUTH_TABLE.invokeExact(tree, writer);
+        return writer;
+    }
+
+    @Benchmark
+    public long countTrue() throws Throwable {
+        return (long) Engine.COUNT_ROWS.invokeExact(tree, isTrue);
+    }
+}
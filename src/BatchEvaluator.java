@@ -0,0 +1,161 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Scores one parsed expression against a whole batch of assignments, split across cores with fork/join.
+ *
+ * The expression is parsed and compiled once (CompiledExpression is safe to share, its stack is per thread), then the
+ * batch is cut in half until the pieces are small enough and every piece is evaluated straight into its own range
+ * of the result, so the workers never touch the same memory and nothing has to be merged afterwards.
+ *
+ * Results are ConditionalValidity ordinals, one byte per assignment, CompiledExpression.VALUES turns them back into the enum.
+ * */
+public class BatchEvaluator {
+    private static final int CHUNK = 4096;//rows per task, small enough to balance, big enough that forking is noise
+
+    private final CompiledExpression expression;
+    private final ForkJoinPool pool;
+
+    public BatchEvaluator(CompiledExpression expression) {
+        this(expression, ForkJoinPool.commonPool());
+    }
+    public BatchEvaluator(CompiledExpression expression, ForkJoinPool pool) {
+        this.expression = expression;
+        this.pool = pool;
+    }
+
+    /*
+     * one assignment per long, a variable is TRUE when the bit of its id is set (see CompiledExpression.evaluate(long)).
+     * expressions of more than 64 variables throw IllegalArgumentException, they need evaluate(boolean[][])
+     * */
+    public byte[] evaluate(long[] trueMasks) {
+        expression.checkMaskable();
+        byte[] results = new byte[trueMasks.length];
+        pool.invoke(new MaskTask(trueMasks, results, 0, trueMasks.length));
+        return results;
+    }
+
+    /*
+     * columnar: columns[id][row] is the value of variable id in that row, all columns the same length.
+     * a missing (null) column leaves that variable UNKNOWN in every row
+     * */
+    public byte[] evaluate(boolean[][] columns) {
+        int rows = 0;
+        for (boolean[] column : columns) {
+            if (column != null) {
+                rows = column.length;
+                break;
+            }
+        }
+        byte[] results = new byte[rows];
+        pool.invoke(new ColumnTask(columns, results, 0, rows));
+        return results;
+    }
+
+    /*
+     * one assignment per row, each in the format CompiledExpression.evaluate(byte[]) takes, so every row can have
+     * its own UNKNOWN and INVALID variables
+     * */
+    public byte[] evaluate(byte[][] assignments) {
+        byte[] results = new byte[assignments.length];
+        pool.invoke(new AssignmentTask(assignments, results, 0, assignments.length));
+        return results;
+    }
+
+    // how many of the results came out as value
+    public static int count(byte[] results, ConditionalValidity value) {
+        int count = 0;
+        for (byte result : results) {
+            if (result == value.ordinal()) count++;
+        }
+        return count;
+    }
+
+    /////////////////   TASKS    /////////////////
+    @SuppressWarnings("serial")//fork/join tasks are never serialized
+    private final class MaskTask extends RecursiveAction {
+        private final long[] masks;
+        private final byte[] results;
+        private final int from, to;
+
+        MaskTask(long[] masks, byte[] results, int from, int to) {
+            this.masks = masks;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    results[i] = expression.evaluateCode(masks[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MaskTask(masks, results, from, middle), new MaskTask(masks, results, middle, to));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class AssignmentTask extends RecursiveAction {
+        private final byte[][] assignments;
+        private final byte[] results;
+        private final int from, to;
+
+        AssignmentTask(byte[][] assignments, byte[] results, int from, int to) {
+            this.assignments = assignments;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    results[i] = expression.evaluateCode(assignments[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AssignmentTask(assignments, results, from, middle), new AssignmentTask(assignments, results, middle, to));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class ColumnTask extends RecursiveAction {
+        private final boolean[][] columns;
+        private final byte[] results;
+        private final int from, to;
+
+        ColumnTask(boolean[][] columns, byte[] results, int from, int to) {
+            this.columns = columns;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                //one scratch assignment per chunk, refilled for every row
+                byte[] assignment = new byte[Math.max(columns.length, expression.variableCount())];
+                Arrays.fill(assignment, CompiledExpression.UNKNOWN);
+                int variables = Math.min(columns.length, assignment.length);
+                for (int row = from; row < to; row++) {
+                    for (int id = 0; id < variables; id++) {
+                        boolean[] column = columns[id];
+                        if (column != null) assignment[id] = column[row] ? CompiledExpression.TRUE : CompiledExpression.FALSE;
+                    }
+                    results[row] = expression.evaluateCode(assignment);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ColumnTask(columns, results, from, middle), new ColumnTask(columns, results, middle, to));
+        }
+    }
+}
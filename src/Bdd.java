@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Reduced ordered binary decision diagrams, for the questions the truth table answers in 2^n rows:
+ * are two rules the same, how many assignments make one TRUE, which ones.
+ *
+ * every node is (variable, low, high), low being the branch where the variable is FALSE. Nodes are only ever made
+ * through the unique table, so no two nodes are the same triple and no node has low == high, which makes every
+ * function have exactly one node: two expressions built in the same Bdd are equivalent exactly when they come back
+ * as the same int. Results of apply/not/restrict are kept in a computed table (a lossy cache, one slot per hash)
+ * so shared subproblems are only solved once.
+ *
+ * variables are ordered by when they were declared, the order given to the constructor first, so the order can be
+ * chosen up front (it decides how big the diagrams get). nothing is ever freed, a Bdd is meant for one batch of questions.
+ *
+ * this is two valued like SatSolver: a variable is TRUE or FALSE. LogicTree restricts its TRUE and FALSE variables
+ * and leaves UNKNOWN and INVALID ones free.
+ * */
+public class Bdd {
+    public static final int FALSE = 0, TRUE = 1;
+    private static final int AND = 0, OR = 1, IMPLIES = 2, IFF = 3, NOT = 4, RESTRICT_FALSE = 5, RESTRICT_TRUE = 6;
+
+    private final SymbolTable variables = new SymbolTable();//name -> level, declaration order
+
+    // nodes, 0 and 1 are the terminals
+    private int[] levels = new int[1024];
+    private int[] lows = new int[1024];
+    private int[] highs = new int[1024];
+    private int size = 2;
+
+    // unique table, open addressing over node ids, 0 is empty (a terminal is never in it)
+    private int[] unique = new int[2048];
+
+    // computed table
+    private final int[] cacheOps, cacheA, cacheB, cacheResults;
+    private final int cacheMask;
+
+    public Bdd(String... order) {
+        this(1 << 16, order);
+    }
+    public Bdd(int cacheSize, String... order) {
+        int slots = Integer.highestOneBit(Math.max(cacheSize, 16) - 1) << 1;
+        cacheOps = new int[slots];
+        Arrays.fill(cacheOps, -1);
+        cacheA = new int[slots];
+        cacheB = new int[slots];
+        cacheResults = new int[slots];
+        cacheMask = slots - 1;
+        levels[FALSE] = levels[TRUE] = Integer.MAX_VALUE;//below every variable
+        for (String name : order) variables.intern(name.toUpperCase());
+    }
+
+    /////////////////   VARIABLES    /////////////////
+    public int variableCount() {
+        return variables.size();
+    }
+    public String variableName(int level) {
+        return variables.name(level);
+    }
+    // the node for a variable, declared after all the others if it's new
+    public int variable(String name) {
+        int level = variables.intern(name.toUpperCase());
+        return node(level, FALSE, TRUE);
+    }
+
+    /////////////////   NODES    /////////////////
+    public int nodeCount() {
+        return size;
+    }
+
+    // the one node for (level, low, high)
+    private int node(int level, int low, int high) {
+        if (low == high) return low;
+        int mask = unique.length - 1;
+        int i = hash(level, low, high) & mask;
+        for (int id; (id = unique[i]) != 0; i = (i + 1) & mask) {
+            if (levels[id] == level && lows[id] == low && highs[id] == high) return id;
+        }
+        if (size == levels.length) {
+            levels = Arrays.copyOf(levels, size * 2);
+            lows = Arrays.copyOf(lows, size * 2);
+            highs = Arrays.copyOf(highs, size * 2);
+        }
+        int id = size++;
+        levels[id] = level;
+        lows[id] = low;
+        highs[id] = high;
+        unique[i] = id;
+        if (size * 2 > unique.length) rehash();
+        return id;
+    }
+
+    private void rehash() {
+        unique = new int[unique.length * 2];
+        int mask = unique.length - 1;
+        for (int id = 2; id < size; id++) {
+            int i = hash(levels[id], lows[id], highs[id]) & mask;
+            while (unique[i] != 0) i = (i + 1) & mask;
+            unique[i] = id;
+        }
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+
+    /////////////////   OPERATIONS    /////////////////
+    public int not(int a) {
+        if (a <= TRUE) return a ^ 1;
+        int cached = cached(NOT, a, 0);
+        if (cached >= 0) return cached;
+        return cache(NOT, a, 0, node(levels[a], not(lows[a]), not(highs[a])));
+    }
+    public int and(int a, int b) {
+        return apply(AND, a, b);
+    }
+    public int or(int a, int b) {
+        return apply(OR, a, b);
+    }
+    public int implies(int a, int b) {
+        return apply(IMPLIES, a, b);
+    }
+    public int iff(int a, int b) {
+        return apply(IFF, a, b);
+    }
+    // same operator characters as expressions and predicates: & ? > =
+    public int apply(char operator, int a, int b) {
+        switch (operator) {
+            case '&': return and(a, b);
+            case '?': return or(a, b);
+            case '>': return implies(a, b);
+            case '=': return iff(a, b);
+            default: throw new IllegalArgumentException("Unknown operator " + operator);
+        }
+    }
+
+    private int apply(int op, int a, int b) {
+        int terminal = terminalCase(op, a, b);
+        if (terminal >= 0) return terminal;
+        if ((op == AND || op == OR || op == IFF) && a > b) {//symmetric, one cache entry for both orders
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        int cached = cached(op, a, b);
+        if (cached >= 0) return cached;
+
+        int level = Math.min(levels[a], levels[b]);
+        int aLow = levels[a] == level ? lows[a] : a, aHigh = levels[a] == level ? highs[a] : a;
+        int bLow = levels[b] == level ? lows[b] : b, bHigh = levels[b] == level ? highs[b] : b;
+        int low = apply(op, aLow, bLow);
+        int high = apply(op, aHigh, bHigh);
+        return cache(op, a, b, node(level, low, high));
+    }
+
+    // the answer when one side settles it, -1 if both sides have to be split
+    private int terminalCase(int op, int a, int b) {
+        switch (op) {
+            case AND:
+                if (a == FALSE || b == FALSE) return FALSE;
+                if (a == TRUE) return b;
+                if (b == TRUE || a == b) return a;
+                return -1;
+            case OR:
+                if (a == TRUE || b == TRUE) return TRUE;
+                if (a == FALSE) return b;
+                if (b == FALSE || a == b) return a;
+                return -1;
+            case IMPLIES:
+                if (a == FALSE || b == TRUE || a == b) return TRUE;
+                if (a == TRUE) return b;
+                if (b == FALSE) return not(a);
+                return -1;
+            case IFF:
+                if (a == b) return TRUE;
+                if (a == TRUE) return b;
+                if (b == TRUE) return a;
+                if (a == FALSE) return not(b);
+                if (b == FALSE) return not(a);
+                return -1;
+        }
+        return -1;
+    }
+
+    // node with the variable fixed to value
+    public int restrict(int node, String name, boolean value) {
+        int level = variables.lookup(name.toUpperCase());
+        return level < 0 ? node : restrict(node, level, value ? RESTRICT_TRUE : RESTRICT_FALSE);
+    }
+    private int restrict(int node, int level, int op) {
+        if (levels[node] > level) return node;//terminal, or the variable is above this part of the diagram
+        if (levels[node] == level) return op == RESTRICT_TRUE ? highs[node] : lows[node];
+        int cached = cached(op, node, level);
+        if (cached >= 0) return cached;
+        return cache(op, node, level, node(levels[node], restrict(lows[node], level, op), restrict(highs[node], level, op)));
+    }
+
+    private int cached(int op, int a, int b) {
+        int i = hash(op, a, b) & cacheMask;
+        return cacheOps[i] == op && cacheA[i] == a && cacheB[i] == b ? cacheResults[i] : -1;
+    }
+    private int cache(int op, int a, int b, int result) {
+        int i = hash(op, a, b) & cacheMask;
+        cacheOps[i] = op;
+        cacheA[i] = a;
+        cacheB[i] = b;
+        cacheResults[i] = result;
+        return result;
+    }
+
+    /////////////////   QUESTIONS    /////////////////
+    // only meaningful for nodes from this Bdd, which is the point: equal functions are equal ids
+    public boolean isEquivalent(int a, int b) {
+        return a == b;
+    }
+
+    // how many assignments of all variableCount() variables make the node TRUE
+    public BigInteger satCount(int node) {
+        BigInteger[] memo = new BigInteger[size];
+        return satCount(node, memo).shiftLeft(levelOf(node));
+    }
+    // assignments of the variables from this node's level down
+    private BigInteger satCount(int node, BigInteger[] memo) {
+        if (node == FALSE) return BigInteger.ZERO;
+        if (node == TRUE) return BigInteger.ONE;
+        if (memo[node] != null) return memo[node];
+        int level = levels[node];
+        BigInteger low = satCount(lows[node], memo).shiftLeft(levelOf(lows[node]) - level - 1);
+        BigInteger high = satCount(highs[node], memo).shiftLeft(levelOf(highs[node]) - level - 1);
+        return memo[node] = low.add(high);
+    }
+    private int levelOf(int node) {
+        return node <= TRUE ? variables.size() : levels[node];
+    }
+
+    /*
+     * every path to TRUE as a cube indexed by level: CompiledExpression.TRUE or FALSE where the path fixes the variable,
+     * UNKNOWN where it doesn't matter. the cubes don't overlap and together they are exactly the satisfying assignments.
+     * the array is reused between calls, copy it to keep it
+     * */
+    public void forEachSatisfying(int node, Consumer<byte[]> cubes) {
+        forEachPath(node, TRUE, cubes);
+    }
+
+    private void forEachPath(int node, int terminal, Consumer<byte[]> cubes) {
+        byte[] cube = new byte[variables.size()];
+        Arrays.fill(cube, CompiledExpression.UNKNOWN);
+        forEachPath(node, terminal, cube, cubes);
+    }
+    private void forEachPath(int node, int terminal, byte[] cube, Consumer<byte[]> cubes) {
+        if (node <= TRUE) {
+            if (node == terminal) cubes.accept(cube);
+            return;
+        }
+        int level = levels[node];
+        cube[level] = CompiledExpression.FALSE;
+        forEachPath(lows[node], terminal, cube, cubes);
+        cube[level] = CompiledExpression.TRUE;
+        forEachPath(highs[node], terminal, cube, cubes);
+        cube[level] = CompiledExpression.UNKNOWN;
+    }
+
+    // the levels the node actually depends on, lowest first
+    public int[] support(int node) {
+        boolean[] seen = new boolean[size];
+        boolean[] used = new boolean[variables.size()];
+        int[] stack = new int[size];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int n = stack[--top];
+            if (n <= TRUE || seen[n]) continue;
+            seen[n] = true;
+            used[levels[n]] = true;
+            stack[top++] = lows[n];
+            stack[top++] = highs[n];
+        }
+        int count = 0;
+        for (boolean u : used) if (u) count++;
+        int[] support = new int[count];
+        for (int level = 0, j = 0; level < used.length; level++) {
+            if (used[level]) support[j++] = level;
+        }
+        return support;
+    }
+
+    /*
+     * the truth table read off the diagram: one row per path instead of per assignment, so rows the path doesn't need
+     * to split on are never written. columns are the variables the node depends on then the result,
+     * a ? in a variable column means either value gives the same result
+     * */
+    public void writeTruthTable(int node, TruthTableWriter writer, String resultHeader) throws IOException {
+        int[] support = support(node);
+        String[] headers = new String[support.length + 1];
+        for (int j = 0; j < support.length; j++) headers[j] = variables.name(support[j]);
+        headers[support.length] = resultHeader;
+        writer.header(headers);
+
+        byte[] row = new byte[headers.length];
+        IOException[] failure = new IOException[1];
+        for (int terminal : List.of(FALSE, TRUE)) {
+            forEachPath(node, terminal, cube -> {
+                if (failure[0] != null) return;
+                for (int j = 0; j < support.length; j++) row[j] = cube[support[j]];
+                row[support.length] = terminal == TRUE ? CompiledExpression.TRUE : CompiledExpression.FALSE;
+                try {
+                    writer.row(row);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+        }
+        if (failure[0] != null) throw failure[0];
+        writer.finish();
+    }
+
+    /////////////////   BUILDING    /////////////////
+    /*
+     * a LogicTree's nodes, children first so every child is built before its parent (no recursion on the tree).
+     * variables are matched by name, so trees with different symbol tables can share one Bdd
+     * */
+    int build(Node root) {
+        if (root == null) return FALSE;
+        List<Node> order = Node.postorder(root);
+        IdentityHashMap<Node, Integer> built = new IdentityHashMap<>();
+        for (Node node : order) {
+            int result;
+            if (node.isVariable()) {
+                result = variable(node.name);
+            } else if (node.value == '~') {
+                result = not(built.get(node.left));
+            } else if (node.value == '&') {
+                result = and(built.get(node.left), built.get(node.right));
+            } else if (node.value == '?') {
+                result = or(built.get(node.left), built.get(node.right));
+            } else {
+                throw new IllegalArgumentException("Unknown operator " + node.value);
+            }
+            built.put(node, result);
+        }
+        return built.get(root);
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+ * Bit-parallel truth table engine.
+ * Instead of cloning every ValidityRef and walking the tree once per row, the tree is compiled into flat arrays
+ * and every node gets two bit-planes, one bit per row, so 64 rows of every subexpression are evaluated in one pass.
+ *
+ *      t f
+ *      1 0     TRUE
+ *      0 1     FALSE
+ *      0 0     UNKNOWN
+ *      1 1     INVALID
+ *
+ * with that encoding NOT is just swapping the planes, and AND/OR become a handful of bitwise ops
+ * that follow the same precedence as LogicTree's and()/or() (FALSE > INVALID > UNKNOWN for and, TRUE > UNKNOWN > INVALID for or)
+ * */
+public class BitTruthTable {
+    private static final byte VAR = 0, NOT = 1, AND = 2, OR = 3;
+    static final int MAX_UNKNOWNS = 62;//2^62 rows still fits a long row index, and wordCount() can't overflow
+
+    // row bit patterns inside one 64 row word, PATTERNS[s] has bit b set when bit s of b is set
+    private static final long[] PATTERNS = {
+            0xAAAAAAAAAAAAAAAAL,
+            0xCCCCCCCCCCCCCCCCL,
+            0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L,
+            0xFFFF0000FFFF0000L,
+            0xFFFFFFFF00000000L
+    };
+
+    private final IdentityHashMap<Node, Integer> slots = new IdentityHashMap<>();
+    private final byte[] ops;
+    private final int[] left, right;    // child slots, children always come before their parents
+    private final int[] shifts;         // for unknown variables: which bit of the row index drives it, otherwise -1
+    private final long[] constT, constF;// for known variables: their fixed planes
+    private final int unknownCount;
+
+    /*
+     * unknownVariables are enumerated in the same order printPartialTruthTable always used,
+     * the first variable is the most significant bit of the row index.
+     * they get slots even if they don't appear in the expression (predicates can introduce variables).
+     * more than MAX_UNKNOWNS of them throws IllegalArgumentException, the row count wouldn't fit
+     * */
+    public BitTruthTable(Node root, List<Node> unknownVariables) {
+        if (unknownVariables.size() > MAX_UNKNOWNS) {
+            throw new IllegalArgumentException("Truth table of " + unknownVariables.size() + " unknown variables has more rows than fit in a long, at most " + MAX_UNKNOWNS);
+        }
+        List<Node> order = Node.postorder(root);
+        int size = unknownVariables.size() + order.size();
+        ops = new byte[size];
+        left = new int[size];
+        right = new int[size];
+        shifts = new int[size];
+        constT = new long[size];
+        constF = new long[size];
+        unknownCount = unknownVariables.size();
+
+        int slot = 0;
+        for (int j = 0; j < unknownCount; j++) {
+            Node var = unknownVariables.get(j);
+            slots.put(var, slot);
+            ops[slot] = VAR;
+            shifts[slot] = unknownCount - j - 1;
+            slot++;
+        }
+        for (Node node : order) {
+            if (slots.containsKey(node)) continue;
+            slots.put(node, slot);
+            shifts[slot] = -1;
+            if (node.isVariable()) {
+                ops[slot] = VAR;
+                ConditionalValidity value = node.validity.value;
+                constT[slot] = (value == ConditionalValidity.TRUE || value == ConditionalValidity.INVALID) ? -1L : 0L;
+                constF[slot] = (value == ConditionalValidity.FALSE || value == ConditionalValidity.INVALID) ? -1L : 0L;
+            } else if (node.value == '~') {
+                ops[slot] = NOT;
+                left[slot] = slots.get(node.left);
+            } else if (node.value == '&' || node.value == '?') {
+                ops[slot] = node.value == '&' ? AND : OR;
+                left[slot] = slots.get(node.left);
+                right[slot] = slots.get(node.right);
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                ops[slot] = VAR;//stays UNKNOWN, same as evaluateNode
+            }
+            slot++;
+        }
+    }
+
+    public long rowCount() {
+        return 1L << unknownCount;
+    }
+    public long wordCount() {
+        return (rowCount() + 63) >>> 6;
+    }
+    public int slotCount() {
+        return ops.length;
+    }
+    public int slotOf(Node node) {
+        Integer slot = slots.get(node);
+        return slot == null ? -1 : slot;
+    }
+    public long[] newPlane() {
+        return new long[ops.length];
+    }
+
+    /*
+     * evaluates rows [word*64, word*64+63] of every slot at once, t and f must come from newPlane().
+     * bits past rowCount() in the last word are garbage and should be ignored.
+     * */
+    public void evaluateWord(long word, long[] t, long[] f) {
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case VAR -> {
+                    int shift = shifts[i];
+                    if (shift < 0) {
+                        t[i] = constT[i];
+                        f[i] = constF[i];
+                    } else {
+                        long bits = shift < 6 ? PATTERNS[shift] : (((word >>> (shift - 6)) & 1) != 0 ? -1L : 0L);
+                        t[i] = bits;
+                        f[i] = ~bits;
+                    }
+                }
+                case NOT -> {
+                    int c = left[i];
+                    t[i] = f[c];
+                    f[i] = t[c];
+                }
+                case AND -> {
+                    long at = t[left[i]], af = f[left[i]], bt = t[right[i]], bf = f[right[i]];
+                    long isFalse = (af & ~at) | (bf & ~bt);
+                    long isInvalid = ~isFalse & ((at & af) | (bt & bf));
+                    long isTrue = (at & ~af) & (bt & ~bf);
+                    t[i] = isTrue | isInvalid;
+                    f[i] = isFalse | isInvalid;
+                }
+                case OR -> {
+                    long at = t[left[i]], af = f[left[i]], bt = t[right[i]], bf = f[right[i]];
+                    long isTrue = (at & ~af) | (bt & ~bf);
+                    long isUnknown = ~isTrue & ((~at & ~af) | (~bt & ~bf));
+                    long isInvalid = ~isTrue & ~isUnknown & ((at & af) | (bt & bf));
+                    long isFalse = (af & ~at) & (bf & ~bt);
+                    t[i] = isTrue | isInvalid;
+                    f[i] = isFalse | isInvalid;
+                }
+            }
+        }
+    }
+
+    // reads one row (0-63 within the word) back out of a slot's planes
+    public static ConditionalValidity decode(long t, long f, int bit) {
+        boolean isT = ((t >>> bit) & 1) != 0;
+        boolean isF = ((f >>> bit) & 1) != 0;
+        if (isT && isF) return ConditionalValidity.INVALID;
+        if (isT) return ConditionalValidity.TRUE;
+        if (isF) return ConditionalValidity.FALSE;
+        return ConditionalValidity.UNKNOWN;
+    }
+}
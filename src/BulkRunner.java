@@ -0,0 +1,407 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Runs a whole file of expression/predicate bundles through one JVM, for the jobs that used to start one per bundle.
+ *
+ *      java -jar logical-expression.jar --batch <input> <output | -> [--tree] [--table] [--explain] [--threads n]
+ *
+ * the input is either JSON lines
+ *      {"id": "rule-17", "expression": "P & ~(S ? Q)", "predicates": ["P", "Q > ~P"]}
+ * or plain lines, the expression then the predicates separated by tabs
+ *      P & ~(S ? Q) <TAB> P <TAB> Q > ~P
+ * which one is decided by the first line that isn't blank or a # comment. the output is in the same format, one verdict per
+ * bundle in input order (--tree and --table add what printTree and printPartialTruthTable would have printed):
+ *      {"line": 1, "id": "rule-17", "result": "FALSE"}
+ *      1 <TAB> FALSE                      then the tree and table lines, and a blank line, when asked for
+ * --table is only written for bundles of up to MAX_TABLE_UNKNOWNS unknown variables, anything bigger is an error verdict.
+ * an expression or a predicate that doesn't parse is an error verdict too.
+ * --explain adds, for bundles whose predicates contradict each other, the fewest of them that still do (see
+ * LogicTree.getConflictingPredicates), as "conflict": ["P", "~P"] or as more tab separated fields after the result.
+ *
+ * the file is read through one buffer on this thread, bundles are evaluated on a pool of workers and written as soon as
+ * every bundle before them is, so only a window of them is ever held in memory however big the file is.
+ * how many bundles, how long and how many per second is printed to stderr at the end.
+ * */
+public class BulkRunner {
+    static final int MAX_TABLE_UNKNOWNS = EvaluationServer.MAX_TABLE_UNKNOWNS;//same cap as the server, 65536 rows
+
+    private final boolean tree, table, explain;
+    private final int threads;
+
+    private static final String USAGE = "Usage: --batch <input> <output | -> [--tree] [--table] [--explain] [--threads n]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        boolean tree = false, table = false, explain = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tree" -> tree = true;
+                case "--table" -> table = true;
+                case "--explain" -> explain = true;
+                case "--threads" -> {
+                    threads = i + 1 < args.length && args[i + 1].matches("[0-9]{1,4}") ? Integer.parseInt(args[++i]) : 0;
+                    if (threads < 1) {
+                        System.out.println("Error: --threads needs a number from 1 to 9999");
+                        System.out.println(USAGE);
+                        return;
+                    }
+                }
+                default -> {
+                    System.out.println("Error: Unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+
+        BulkRunner runner = new BulkRunner(tree, table, explain, threads);
+        boolean toStdout = args[1].equals("-");
+        Writer out = toStdout
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Path.of(args[1]), StandardCharsets.UTF_8);
+        Report report;
+        try {
+            report = runner.run(Path.of(args[0]), out);
+        } finally {
+            if (toStdout) out.flush();
+            else out.close();
+        }
+        System.err.println(report);
+        if (Metrics.ENABLED) System.err.print(Metrics.snapshot());
+    }
+
+    public BulkRunner(boolean tree, boolean table, boolean explain, int threads) {
+        this.tree = tree;
+        this.table = table;
+        this.explain = explain;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static final class Report {
+        public final long bundles, errors, nanos;
+
+        Report(long bundles, long errors, long nanos) {
+            this.bundles = bundles;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        public double bundlesPerSecond() {
+            return nanos == 0 ? 0 : bundles * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bundles (%d errors) in %.1f ms, %.0f bundles/s", bundles, errors, nanos / 1e6, bundlesPerSecond());
+        }
+    }
+
+    public Report run(Path input, Writer output) throws IOException {
+        long start = System.nanoTime();
+        long bundles = 0, errors = 0;
+        int window = threads * 64;//bundles in flight, enough to keep every worker busy while the head one is written
+        ArrayDeque<Future<Verdict>> pending = new ArrayDeque<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Writer out = output instanceof BufferedWriter ? output : new BufferedWriter(output, 1 << 16);
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(input), StandardCharsets.UTF_8), 1 << 16)) {
+            Boolean json = null;
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+                if (json == null) json = trimmed.startsWith("{");
+
+                Bundle bundle = new Bundle(lineNumber, trimmed, json);
+                pending.addLast(pool.submit(() -> evaluate(bundle)));
+                if (pending.size() >= window) {
+                    if (!write(pending.removeFirst(), out)) errors++;
+                    bundles++;
+                }
+            }
+            while (!pending.isEmpty()) {
+                if (!write(pending.removeFirst(), out)) errors++;
+                bundles++;
+            }
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Report(bundles, errors, System.nanoTime() - start);
+    }
+
+    // false when the bundle was an error
+    private static boolean write(Future<Verdict> next, Writer out) throws IOException {
+        Verdict verdict;
+        try {
+            verdict = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        out.write(verdict.text);
+        return verdict.ok;
+    }
+
+    /////////////////   BUNDLES    /////////////////
+    private static final class Bundle {
+        final int line;
+        final String text;
+        final boolean json;
+
+        Bundle(int line, String text, boolean json) {
+            this.line = line;
+            this.text = text;
+            this.json = json;
+        }
+    }
+
+    private record Verdict(String text, boolean ok) {}
+
+    // runs on a worker: parse the line, build the tree, and format everything that gets written for it
+    private Verdict evaluate(Bundle bundle) {
+        String id = null, expression;
+        List<String> predicates = new ArrayList<>();
+        try {
+            if (bundle.json) {
+                JsonLine parsed = new JsonLine(bundle.text);
+                parsed.parse();
+                id = parsed.id;
+                expression = parsed.expression;
+                predicates = parsed.predicates;
+            } else {
+                String[] fields = bundle.text.split("\t");
+                expression = fields[0];
+                for (int i = 1; i < fields.length; i++) predicates.add(fields[i]);
+            }
+            if (expression == null || expression.isBlank()) return error(bundle, id, "Missing expression");
+
+            String[] upper = new String[predicates.size()];
+            for (int i = 0; i < upper.length; i++) upper[i] = predicates.get(i).toUpperCase();
+            // quiet: what went wrong goes in the verdict, not in the middle of the records when they go to stdout
+            LogicTree logicTree = LogicTree.quiet(expression.toUpperCase(), upper);
+            if (logicTree.isEmpty()) return error(bundle, id, "Could not parse " + expression + ": " + logicTree.getParseError());
+            if (!logicTree.getPredicateErrors().isEmpty()) return error(bundle, id, String.join("; ", logicTree.getPredicateErrors()));
+            String tooBig = table ? logicTree.checkTruthTableSize(MAX_TABLE_UNKNOWNS) : null;
+            if (tooBig != null) return error(bundle, id, tooBig);
+
+            String result = logicTree.evaluate().toString();
+            List<String> conflict = null;
+            if (explain) {
+                int[] indexes = logicTree.getConflictingPredicates();
+                if (indexes.length > 0) {
+                    conflict = new ArrayList<>();
+                    for (int index : indexes) conflict.add(predicates.get(index));
+                }
+            }
+            String treeText = tree ? logicTree.getTreeString() : null;
+            String tableText = null;
+            if (table) {
+                StringWriter text = new StringWriter();
+                logicTree.writePartialTruthTable(TruthTableWriter.text(text));
+                tableText = text.toString();
+            }
+            return new Verdict(format(bundle, id, "result", result, conflict, treeText, tableText), true);
+        } catch (IOException | RuntimeException e) {
+            return error(bundle, id, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static Verdict error(Bundle bundle, String id, String message) {
+        return new Verdict(format(bundle, id, "error", message, null, null, null), false);
+    }
+
+    private static String format(Bundle bundle, String id, String field, String value, List<String> conflict, String treeText, String tableText) {
+        StringBuilder sb = new StringBuilder();
+        if (bundle.json) {
+            sb.append("{\"line\": ").append(bundle.line);
+            if (id != null) sb.append(", \"id\": ").append(quote(id));
+            sb.append(", \"").append(field).append("\": ").append(quote(value));
+            if (conflict != null) {
+                sb.append(", \"conflict\": [");
+                for (int i = 0; i < conflict.size(); i++) sb.append(i == 0 ? "" : ", ").append(quote(conflict.get(i)));
+                sb.append(']');
+            }
+            if (treeText != null) sb.append(", \"tree\": ").append(quote(treeText));
+            if (tableText != null) sb.append(", \"table\": ").append(quote(tableText));
+            sb.append("}\n");
+        } else {
+            sb.append(bundle.line).append('\t').append(field.equals("error") ? "ERROR\t" + value.replace('\n', ' ') : value);
+            if (conflict != null) {
+                for (String predicate : conflict) sb.append('\t').append(predicate);
+            }
+            sb.append('\n');
+            if (treeText != null || tableText != null) {
+                if (treeText != null) sb.append(treeText).append(treeText.endsWith("\n") ? "" : "\n");
+                if (tableText != null) sb.append(tableText).append(tableText.endsWith("\n") ? "" : "\n");
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /////////////////   JSON    /////////////////
+    static String quote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /*
+     * just enough JSON for one bundle per line: an object whose "expression" and "id" are strings and "predicates" is
+     * an array of strings, anything else in it is skipped over. malformed input throws IllegalArgumentException
+     * */
+    private static final class JsonLine {
+        private final String text;
+        private int at;
+        String id, expression;
+        final List<String> predicates = new ArrayList<>();
+
+        JsonLine(String text) {
+            this.text = text;
+        }
+
+        void parse() {
+            expect('{');
+            if (peek() == '}') {
+                at++;
+                return;
+            }
+            do {
+                String key = string();
+                expect(':');
+                switch (key) {
+                    case "id" -> id = peek() == '"' ? string() : scalar();
+                    case "expression" -> expression = string();
+                    case "predicates" -> {
+                        expect('[');
+                        if (peek() == ']') {
+                            at++;
+                        } else {
+                            do predicates.add(string()); while (next(',', ']'));
+                        }
+                    }
+                    default -> skip();
+                }
+            } while (next(',', '}'));
+        }
+
+        // true on more, false on close, anything else is an error
+        private boolean next(char more, char close) {
+            char c = peek();
+            at++;
+            if (c == more) return true;
+            if (c == close) return false;
+            throw new IllegalArgumentException("Expected '" + more + "' or '" + close + "' at " + (at - 1));
+        }
+
+        private void skip() {
+            char c = peek();
+            if (c == '"') {
+                string();
+            } else if (c == '[' || c == '{') {
+                char close = c == '[' ? ']' : '}';
+                at++;
+                if (peek() == close) {
+                    at++;
+                    return;
+                }
+                do {
+                    if (close == '}') {
+                        string();
+                        expect(':');
+                    }
+                    skip();
+                } while (next(',', close));
+            } else {
+                scalar();
+            }
+        }
+
+        // a number, true, false or null as its text
+        private String scalar() {
+            peek();
+            int start = at;
+            while (at < text.length() && ",}] \t".indexOf(text.charAt(at)) < 0) at++;
+            if (start == at) throw new IllegalArgumentException("Expected a value at " + start);
+            return text.substring(start, at);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (at >= text.length()) throw new IllegalArgumentException("Unterminated string");
+                char c = text.charAt(at++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (at >= text.length()) throw new IllegalArgumentException("Unterminated string");
+                char escaped = text.charAt(at++);
+                switch (escaped) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (at + 4 > text.length()) throw new IllegalArgumentException("Bad escape at " + at);
+                        sb.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+                        at += 4;
+                    }
+                    default -> sb.append(escaped);//" \ and /
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (peek() != c) throw new IllegalArgumentException("Expected '" + c + "' at " + at);
+            at++;
+        }
+
+        // next character that isn't whitespace, without taking it
+        private char peek() {
+            while (at < text.length() && Character.isWhitespace(text.charAt(at))) at++;
+            if (at >= text.length()) throw new IllegalArgumentException("Unexpected end of line");
+            return text.charAt(at);
+        }
+    }
+}
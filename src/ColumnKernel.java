@@ -0,0 +1,85 @@
+/*
+ * The bitwise work ColumnarEvaluator does over whole columns, in the bit-planes BitTruthTable uses
+ * (t f: 10 TRUE, 01 FALSE, 00 UNKNOWN, 11 INVALID, one bit per row), n words at a time.
+ *
+ *      scalar()    plain long loops, always there
+ *      vector()    the same with jdk.incubator.vector LongVectors, as many lanes as the CPU has. it lives in vector/
+ *                  and is only compiled with mvn -Pvector, and only loads when the JVM runs with
+ *                  --add-modules jdk.incubator.vector, so it's looked up by name and null when it isn't there
+ *      best()      vector() if it's there (and -Dlogic.vector=false isn't set), scalar() if not
+ * */
+public interface ColumnKernel {
+    // t and f of a column of facts: t is the column, f its complement
+    void load(long[] column, int offset, long[] t, long[] f, int n);
+    // same rules as LogicTree's and()/or() (FALSE > INVALID > UNKNOWN for and, TRUE > UNKNOWN > INVALID for or)
+    void and(long[] at, long[] af, long[] bt, long[] bf, long[] t, long[] f, int n);
+    void or(long[] at, long[] af, long[] bt, long[] bf, long[] t, long[] f, int n);
+
+    static ColumnKernel scalar() {
+        return Scalar.INSTANCE;
+    }
+
+    static ColumnKernel vector() {
+        return Scalar.VECTOR;
+    }
+
+    static ColumnKernel best() {
+        ColumnKernel vector = vector();
+        return vector != null && !"false".equals(System.getProperty("logic.vector")) ? vector : scalar();
+    }
+
+    final class Scalar implements ColumnKernel {
+        static final Scalar INSTANCE = new Scalar();
+        static final ColumnKernel VECTOR = loadVector();
+
+        private Scalar() {
+        }
+
+        private static ColumnKernel loadVector() {
+            try {
+                return (ColumnKernel) Class.forName("VectorColumnKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;//not compiled in, or the module isn't there
+            }
+        }
+
+        @Override
+        public void load(long[] column, int offset, long[] t, long[] f, int n) {
+            for (int i = 0; i < n; i++) {
+                long bits = column[offset + i];
+                t[i] = bits;
+                f[i] = ~bits;
+            }
+        }
+
+        @Override
+        public void and(long[] at, long[] af, long[] bt, long[] bf, long[] t, long[] f, int n) {
+            for (int i = 0; i < n; i++) {
+                long a = at[i], b = af[i], c = bt[i], d = bf[i];
+                long isFalse = (b & ~a) | (d & ~c);
+                long isInvalid = ~isFalse & ((a & b) | (c & d));
+                long isTrue = (a & ~b) & (c & ~d);
+                t[i] = isTrue | isInvalid;
+                f[i] = isFalse | isInvalid;
+            }
+        }
+
+        @Override
+        public void or(long[] at, long[] af, long[] bt, long[] bf, long[] t, long[] f, int n) {
+            for (int i = 0; i < n; i++) {
+                long a = at[i], b = af[i], c = bt[i], d = bf[i];
+                long isTrue = (a & ~b) | (c & ~d);
+                long isUnknown = ~isTrue & ((~a & ~b) | (~c & ~d));
+                long isInvalid = ~isTrue & ~isUnknown & ((a & b) | (c & d));
+                long isFalse = (b & ~a) & (d & ~c);
+                t[i] = isTrue | isInvalid;
+                f[i] = isFalse | isInvalid;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    }
+}
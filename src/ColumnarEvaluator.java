@@ -0,0 +1,191 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+ * Evaluates the tree over columns of facts, a whole block of rows per operator instead of one row at a time.
+ *
+ * every variable comes in as a packed bitset column, columns[id][w] bit b is row w*64+b and set means TRUE.
+ * a variable without a column (null, or past the end of columns) keeps the value the predicates settled it on in every row.
+ * the tree is run once per block of BLOCK words over bit-planes (see BitTruthTable for the encoding), each operator one
+ * ColumnKernel call over the whole block, NOT costs nothing (the child's planes swapped), shared subexpressions once.
+ *
+ *      ColumnarEvaluator columnar = tree.columnar();
+ *      ColumnarEvaluator.Result result = columnar.evaluate(columns, rows);
+ *      result.trueBits();          //rows that came out TRUE
+ *      result.unknownMask();       //and the ones that came out UNKNOWN or INVALID
+ *      result.invalidMask();
+ *
+ * uses ColumnKernel.best() unless given a kernel. only reads its own arrays, so one evaluator can be shared between threads
+ * */
+public final class ColumnarEvaluator {
+    static final int BLOCK = 256;//words per pass, 16384 rows, small enough that every plane of a block stays in cache
+    private static final byte VAR = 0, NOT = 1, AND = 2, OR = 3;
+
+    private final byte[] ops;
+    private final int[] left, right;    //child slots, children first
+    private final int[] variables;      //VAR: variable id, -1 for an operator that didn't parse (always UNKNOWN)
+    private final byte[] settled;
+
+    ColumnarEvaluator(Node root, byte[] settled) {
+        this.settled = settled.clone();
+        List<Node> order = root == null ? List.of() : Node.postorder(root);
+        int size = order.size();
+        ops = new byte[size];
+        left = new int[size];
+        right = new int[size];
+        variables = new int[size];
+        IdentityHashMap<Node, Integer> slots = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Node node = order.get(i);
+            slots.put(node, i);
+            variables[i] = -1;
+            if (node.isVariable()) {
+                ops[i] = VAR;
+                variables[i] = node.symbol;
+            } else if (node.value == '~') {
+                ops[i] = NOT;
+                left[i] = slots.get(node.left);
+            } else if (node.value == '&' || node.value == '?') {
+                ops[i] = node.value == '&' ? AND : OR;
+                left[i] = slots.get(node.left);
+                right[i] = slots.get(node.right);
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                ops[i] = VAR;
+            }
+        }
+    }
+
+    public Result evaluate(long[][] columns, long rows) {
+        return evaluate(columns, rows, ColumnKernel.best());
+    }
+
+    public Result evaluate(long[][] columns, long rows, ColumnKernel kernel) {
+        if (rows < 0 || rows > (long) Integer.MAX_VALUE * 64) throw new IllegalArgumentException("Row count " + rows);
+        int words = (int) ((rows + 63) >>> 6);
+        long[] resultT = new long[words], resultF = new long[words];
+        if (ops.length == 0) return new Result(resultT, resultF, rows);//all UNKNOWN
+
+        // planes per slot, NOT slots just point at their child's planes the other way round
+        int size = ops.length;
+        long[][] t = new long[size][], f = new long[size][];
+        boolean[] fromColumn = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            switch (ops[i]) {
+                case VAR -> {
+                    int id = variables[i];
+                    if (id >= 0 && id < columns.length && columns[id] != null) {
+                        if (columns[id].length < words) throw new IllegalArgumentException("Column " + id + " is shorter than " + rows + " rows");
+                        fromColumn[i] = true;
+                        t[i] = new long[BLOCK];
+                        f[i] = new long[BLOCK];
+                    } else {
+                        byte value = id < 0 || id >= settled.length ? CompiledExpression.UNKNOWN : settled[id];
+                        t[i] = constant(value == CompiledExpression.TRUE || value == CompiledExpression.INVALID);
+                        f[i] = constant(value == CompiledExpression.FALSE || value == CompiledExpression.INVALID);
+                    }
+                }
+                case NOT -> {
+                    t[i] = f[left[i]];
+                    f[i] = t[left[i]];
+                }
+                default -> {
+                    t[i] = new long[BLOCK];
+                    f[i] = new long[BLOCK];
+                }
+            }
+        }
+
+        int last = size - 1;
+        for (int from = 0; from < words; from += BLOCK) {
+            int n = Math.min(BLOCK, words - from);
+            for (int i = 0; i < size; i++) {
+                switch (ops[i]) {
+                    case VAR -> {
+                        if (fromColumn[i]) kernel.load(columns[variables[i]], from, t[i], f[i], n);
+                    }
+                    case AND -> kernel.and(t[left[i]], f[left[i]], t[right[i]], f[right[i]], t[i], f[i], n);
+                    case OR -> kernel.or(t[left[i]], f[left[i]], t[right[i]], f[right[i]], t[i], f[i], n);
+                }
+            }
+            System.arraycopy(t[last], 0, resultT, from, n);
+            System.arraycopy(f[last], 0, resultF, from, n);
+        }
+
+        // rows past the end come out UNKNOWN, nothing counts them
+        int tail = (int) (rows & 63);
+        if (tail != 0) {
+            long mask = (1L << tail) - 1;
+            resultT[words - 1] &= mask;
+            resultF[words - 1] &= mask;
+        }
+        return new Result(resultT, resultF, rows);
+    }
+
+    private static long[] constant(boolean set) {
+        long[] plane = new long[BLOCK];
+        if (set) java.util.Arrays.fill(plane, -1L);
+        return plane;
+    }
+
+    /////////////////   RESULT    /////////////////
+    /*
+     * the two planes of the whole expression, rows past rows() are 0 in both
+     * */
+    public static final class Result {
+        private final long[] t, f;
+        private final long rows;
+
+        Result(long[] t, long[] f, long rows) {
+            this.t = t;
+            this.f = f;
+            this.rows = rows;
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        public ConditionalValidity get(long row) {
+            if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+            int word = (int) (row >>> 6);
+            return BitTruthTable.decode(t[word], f[word], (int) (row & 63));
+        }
+
+        // the result bitset: set where the row is TRUE
+        public long[] trueBits() {
+            long[] bits = new long[t.length];
+            for (int i = 0; i < bits.length; i++) bits[i] = t[i] & ~f[i];
+            return bits;
+        }
+        public long[] falseBits() {
+            long[] bits = new long[t.length];
+            for (int i = 0; i < bits.length; i++) bits[i] = f[i] & ~t[i];
+            return bits;
+        }
+        public long[] unknownMask() {
+            long[] bits = new long[t.length];
+            for (int i = 0; i < bits.length; i++) bits[i] = ~t[i] & ~f[i];
+            int tail = (int) (rows & 63);
+            if (tail != 0) bits[bits.length - 1] &= (1L << tail) - 1;
+            return bits;
+        }
+        public long[] invalidMask() {
+            long[] bits = new long[t.length];
+            for (int i = 0; i < bits.length; i++) bits[i] = t[i] & f[i];
+            return bits;
+        }
+
+        public long count(ConditionalValidity value) {
+            long[] bits = switch (value) {
+                case TRUE -> trueBits();
+                case FALSE -> falseBits();
+                case INVALID -> invalidMask();
+                case UNKNOWN -> unknownMask();
+            };
+            long count = 0;
+            for (long word : bits) count += Long.bitCount(word);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+ * A LogicTree flattened into a postorder program, for evaluating the same expression under many assignments.
+ *
+ * evaluateNode has to chase Node pointers, check for variables on every visit and write back into the ValidityRefs,
+ * here the whole expression is two arrays:
+ *      ops[i]      PUSH, NOT, AND or OR
+ *      operands[i] the variable id (see SymbolTable) for PUSH
+ * and running it is a loop over a byte stack. Values are the ConditionalValidity ordinals so they fit in a byte,
+ * and the operators are lookup tables built from LogicTree's own and()/or()/negate(), so the rules can't drift apart.
+ *
+ * nothing is allocated per call, the stack is kept per thread so one CompiledExpression can be shared.
+ * */
+public final class CompiledExpression {
+    static final byte PUSH = 0, NOT = 1, AND = 2, OR = 3;
+
+    static final ConditionalValidity[] VALUES = ConditionalValidity.values();
+    static final byte FALSE = (byte) ConditionalValidity.FALSE.ordinal();
+    static final byte TRUE = (byte) ConditionalValidity.TRUE.ordinal();
+    static final byte INVALID = (byte) ConditionalValidity.INVALID.ordinal();
+    static final byte UNKNOWN = (byte) ConditionalValidity.UNKNOWN.ordinal();
+
+    // [a * 4 + b]
+    static final byte[] AND_TABLE = new byte[16];
+    static final byte[] OR_TABLE = new byte[16];
+    static final byte[] NOT_TABLE = new byte[4];
+    static {
+        for (ConditionalValidity a : VALUES) {
+            NOT_TABLE[a.ordinal()] = (byte) LogicTree.negate(a).ordinal();
+            for (ConditionalValidity b : VALUES) {
+                AND_TABLE[a.ordinal() * 4 + b.ordinal()] = (byte) LogicTree.and(a, b).ordinal();
+                OR_TABLE[a.ordinal() * 4 + b.ordinal()] = (byte) LogicTree.or(a, b).ordinal();
+            }
+        }
+    }
+
+    private final byte[] ops;
+    private final int[] operands;
+    private final int maxStack;
+    private final int variableCount;
+    private final ThreadLocal<byte[]> stacks;
+
+    CompiledExpression(Node root) {
+        int size = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        Deque<Node> reversed = new ArrayDeque<>();
+        //postorder by walking root, right, left and reversing, leaves are shared but each use gets its own PUSH
+        if (root != null) stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            reversed.push(node);
+            size++;
+            if (node.left != null) stack.push(node.left);
+            if (node.right != null) stack.push(node.right);
+        }
+
+        ops = new byte[size];
+        operands = new int[size];
+        int depth = 0, deepest = 0, highestVariable = -1;
+        for (int i = 0; i < size; i++) {
+            Node node = reversed.pop();
+            if (node.isVariable()) {
+                ops[i] = PUSH;
+                operands[i] = node.symbol;
+                highestVariable = Math.max(highestVariable, node.symbol);
+                depth++;
+            } else if (node.value == '~') {
+                ops[i] = NOT;
+            } else if (node.value == '&' || node.value == '?') {
+                ops[i] = node.value == '&' ? AND : OR;
+                depth--;
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                ops[i] = PUSH;
+                operands[i] = -1;//always UNKNOWN
+                depth++;
+            }
+            deepest = Math.max(deepest, depth);
+        }
+        maxStack = Math.max(deepest, 1);
+        variableCount = highestVariable + 1;
+        stacks = ThreadLocal.withInitial(() -> new byte[maxStack]);
+    }
+
+    public int length() {
+        return ops.length;
+    }
+    // byte[] assignments have to be at least this long
+    public int variableCount() {
+        return variableCount;
+    }
+
+    // the program itself, for RuleCatalog to write out
+    byte op(int i) {
+        return ops[i];
+    }
+    int operand(int i) {
+        return operands[i];
+    }
+    int maxStack() {
+        return maxStack;
+    }
+
+    /*
+     * every variable is TRUE when the bit of its id is set and FALSE otherwise. only for expressions of up to 64
+     * variables (variableCount()), anything with more throws IllegalArgumentException, use evaluate(byte[]) for those
+     * */
+    public ConditionalValidity evaluate(long trueMask) {
+        return VALUES[evaluateCode(trueMask)];
+    }
+    public byte evaluateCode(long trueMask) {
+        checkMaskable();
+        if (ops.length == 0) return UNKNOWN;
+        byte[] stack = stacks.get();
+        int top = -1;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case PUSH -> {
+                    int var = operands[i];
+                    stack[++top] = var < 0 ? UNKNOWN : (((trueMask >>> var) & 1) != 0 ? TRUE : FALSE);
+                }
+                case NOT -> stack[top] = NOT_TABLE[stack[top]];
+                case AND -> {
+                    top--;
+                    stack[top] = AND_TABLE[stack[top] * 4 + stack[top + 1]];
+                }
+                case OR -> {
+                    top--;
+                    stack[top] = OR_TABLE[stack[top] * 4 + stack[top + 1]];
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    void checkMaskable() {
+        if (variableCount > 64) {
+            throw new IllegalArgumentException(variableCount + " variables don't fit in a 64 bit mask, pass a byte[] assignment instead");
+        }
+    }
+
+    /*
+     * assignment[id] holds a ConditionalValidity ordinal, so known, unknown and invalid variables can be mixed
+     * */
+    public ConditionalValidity evaluate(byte[] assignment) {
+        return VALUES[evaluateCode(assignment)];
+    }
+    public byte evaluateCode(byte[] assignment) {
+        if (ops.length == 0) return UNKNOWN;
+        byte[] stack = stacks.get();
+        int top = -1;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case PUSH -> {
+                    int var = operands[i];
+                    stack[++top] = var < 0 ? UNKNOWN : assignment[var];
+                }
+                case NOT -> stack[top] = NOT_TABLE[stack[top]];
+                case AND -> {
+                    top--;
+                    stack[top] = AND_TABLE[stack[top] * 4 + stack[top + 1]];
+                }
+                case OR -> {
+                    top--;
+                    stack[top] = OR_TABLE[stack[top] * 4 + stack[top + 1]];
+                }
+            }
+        }
+        return stack[0];
+    }
+}
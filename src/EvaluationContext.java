@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/*
+ * Everything one evaluation of an Expression changes: the value of every variable and of every node.
+ * Not thread safe, it's meant to be made per thread or per request (Expression.newContext()) and thrown away or reset().
+ *
+ * starts out with the values the predicates settled on, set() overrides single variables and propagate()
+ * runs the predicates again over whatever is set now.
+ * */
+public final class EvaluationContext {
+    private final Expression expression;
+    private final byte[] variables;//by variable id, ConditionalValidity ordinals
+    private final byte[] results;  //by node number, valid after evaluate()
+
+    EvaluationContext(Expression expression) {
+        this.expression = expression;
+        variables = new byte[expression.variableCount()];
+        results = new byte[expression.nodeCount()];
+        reset();
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    // back to the values the predicates settled on, every node UNKNOWN
+    public EvaluationContext reset() {
+        expression.settle(variables);
+        Arrays.fill(results, CompiledExpression.UNKNOWN);
+        return this;
+    }
+
+    public EvaluationContext set(String name, ConditionalValidity value) {
+        int id = expression.variableId(name);
+        if (id < 0) {
+            System.out.println("Error: Unknown variable " + name);
+            return this;
+        }
+        return set(id, value);
+    }
+    public EvaluationContext set(int id, ConditionalValidity value) {
+        variables[id] = (byte) value.ordinal();
+        return this;
+    }
+    public ConditionalValidity get(String name) {
+        int id = expression.variableId(name);
+        return id < 0 ? ConditionalValidity.UNKNOWN : CompiledExpression.VALUES[variables[id]];
+    }
+
+    // applies the predicates to the values set so far, same rules as LogicTree
+    public EvaluationContext propagate() {
+        expression.propagate(variables);
+        return this;
+    }
+
+    public ConditionalValidity evaluate() {
+        return CompiledExpression.VALUES[expression.evaluate(variables, results)];
+    }
+
+    // value of one node from the last evaluate(), see Expression.describe() for what the node is
+    public ConditionalValidity result(int node) {
+        return CompiledExpression.VALUES[results[node]];
+    }
+}
@@ -0,0 +1,423 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Keeps one warm JVM answering evaluations over a local socket, instead of paying startup and JIT for every expression.
+ *
+ *      java -jar logical-expression.jar --serve 7000                 TCP, loopback only
+ *      java -jar logical-expression.jar --serve /tmp/logic.sock      Unix domain socket (a socket left at that path
+ *                                                                    is replaced, anything else there is an error)
+ *
+ * one request per line, fields separated by tabs (the operators use everything else), upper-cased like Main does:
+ *
+ *      evaluate <TAB> P & ~(S ? Q) <TAB> P <TAB> Q > ~P          OK <TAB> FALSE
+ *      table <TAB> P & ~(S ? Q) <TAB> P                          OK <TAB> 5, then the 5 lines of the CSV truth table
+ *                                                                (up to MAX_TABLE_UNKNOWNS unknown variables)
+ *      metrics                                                   OK <TAB> n, then n lines of name <TAB> value
+ *      anything wrong                                            ERROR <TAB> message
+ *                                                                (a predicate that doesn't parse too)
+ *
+ * a line that is only digits is a length prefix instead: that many bytes of UTF-8 follow holding the request, and the
+ * response comes back the same way (its length in bytes, a newline, then the response above). a request over
+ * MAX_REQUEST_BYTES, prefixed or not, gets an ERROR and the connection is closed, since where the next request starts is lost.
+ *
+ * every connection gets its own virtual thread, its requests are answered in order. parsing and the predicates go through
+ * an ExpressionCache (truth tables too), so only the evaluation itself is left per request, and that is batched by
+ * expression: while one batch of an expression is being evaluated, every request for the same expression that comes in
+ * (whatever its predicates) joins the next batch, which is then evaluated in one go (BatchEvaluator) and every request
+ * gets its own row back. with nothing else in flight a batch is just the one request, so a lone request doesn't wait.
+ * */
+public class EvaluationServer implements AutoCloseable {
+    static final int MAX_REQUEST_BYTES = 1 << 24;
+    static final int MAX_TABLE_UNKNOWNS = 16;//65536 rows
+
+    private final ServerSocketChannel channel;
+    private final Path socketFile;//null for TCP
+    private final ExpressionCache cache;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>();//by ExpressionCache.key(expression)
+    private final RequestMetrics metrics = new RequestMetrics();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: --serve <port | socket path>");
+            return;
+        }
+        EvaluationServer server;
+        try {
+            server = new EvaluationServer(address(args[0]), new ExpressionCache(1 << 20));
+        } catch (IOException e) {
+            System.out.println("Error: Can't listen on " + args[0] + ": " + e.getMessage());
+            return;
+        }
+        try (server) {
+            System.out.println("Listening on " + server.channel.getLocalAddress());
+            server.run();
+        }
+    }
+
+    // a number is a loopback TCP port, anything else is the path of a Unix domain socket
+    static SocketAddress address(String where) {
+        if (!where.isEmpty() && where.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(where));
+        }
+        return UnixDomainSocketAddress.of(where);
+    }
+
+    public EvaluationServer(SocketAddress address, ExpressionCache cache) throws IOException {
+        this.cache = cache;
+        if (address instanceof UnixDomainSocketAddress unix) {
+            socketFile = unix.getPath();
+            removeStaleSocket(socketFile);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            socketFile = null;
+            channel = ServerSocketChannel.open();
+        }
+        channel.bind(address);
+    }
+
+    // a socket left over from a server that didn't shut down cleanly. anything else at the path is a mistyped argument, not ours to delete
+    private static void removeStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) return;
+        boolean socket;
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            socket = (mode & 0170000) == 0140000;//S_IFSOCK
+        } catch (UnsupportedOperationException e) {
+            socket = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+        if (!socket) throw new IOException(path + " exists and is not a socket");
+        Files.delete(path);
+    }
+
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    // accepts until close(), blocks the calling thread
+    public void run() {
+        while (channel.isOpen()) {
+            try {
+                SocketChannel client = channel.accept();
+                connections.submit(() -> serve(client));
+            } catch (IOException e) {
+                if (channel.isOpen()) System.out.println("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        connections.shutdownNow();
+        if (socketFile != null) Files.deleteIfExists(socketFile);
+    }
+
+    /////////////////   CONNECTIONS    /////////////////
+    private void serve(SocketChannel client) {
+        try (client;
+             InputStream in = new BufferedInputStream(Channels.newInputStream(client), 1 << 16);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(client), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (readLine(in, line)) {
+                if (line.size() > MAX_REQUEST_BYTES) {
+                    out.write(error("Request line is over " + MAX_REQUEST_BYTES + " bytes").getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                String request = line.toString(StandardCharsets.UTF_8);
+                boolean prefixed = !request.isEmpty() && request.chars().allMatch(Character::isDigit);
+                if (prefixed) {
+                    long length = request.length() > 9 ? Long.MAX_VALUE : Long.parseLong(request);
+                    if (length > MAX_REQUEST_BYTES) {
+                        byte[] response = error("Request of " + request + " bytes is over " + MAX_REQUEST_BYTES).getBytes(StandardCharsets.UTF_8);
+                        out.write((response.length + "\n").getBytes(StandardCharsets.US_ASCII));
+                        out.write(response);
+                        break;
+                    }
+                    byte[] body = in.readNBytes((int) length);
+                    request = new String(body, StandardCharsets.UTF_8);
+                }
+                if (request.isBlank()) continue;
+
+                byte[] response = handle(request).getBytes(StandardCharsets.UTF_8);
+                if (prefixed) out.write((response.length + "\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(response);
+                // only flush once the client has nothing more waiting, so pipelined requests share a write
+                if (in.available() == 0) out.flush();
+            }
+            out.flush();
+        } catch (IOException e) {
+            //client went away, nothing to answer
+        }
+    }
+
+    // bytes up to '\n' (a '\r' before it is dropped) into line, false at the end of the stream.
+    // stops once line is over MAX_REQUEST_BYTES, so a client that never sends '\n' can't fill the heap
+    private static boolean readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+            if (line.size() > MAX_REQUEST_BYTES) return true;
+        }
+        if (b == -1 && line.size() == 0) return false;
+        byte[] bytes = line.toByteArray();
+        if (bytes.length > 0 && bytes[bytes.length - 1] == '\r') {
+            line.reset();
+            line.write(bytes, 0, bytes.length - 1);
+        }
+        return true;
+    }
+
+    /////////////////   REQUESTS    /////////////////
+    String handle(String request) {
+        long start = System.nanoTime();
+        metrics.queued.incrementAndGet();
+        try {
+            String[] fields = request.split("\t");
+            String command = fields[0].trim().toLowerCase();
+            if (command.equals("metrics")) return metrics.response();
+            if (!command.equals("evaluate") && !command.equals("table")) return error("Unknown command " + fields[0]);
+            if (fields.length < 2 || fields[1].isBlank()) return error("Missing expression");
+
+            String expression = fields[1].toUpperCase();
+            String[] predicates = new String[fields.length - 2];
+            SymbolTable scratch = new SymbolTable();
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = fields[i + 2].toUpperCase();
+                // LogicTree would print it and leave it out, the client has to hear about it instead
+                if (!predicates[i].isBlank() && PredicatePropagator.parse(predicates[i], scratch) == null) {
+                    return error(PredicatePropagator.invalid(fields[i + 2]));
+                }
+            }
+            return command.equals("table") ? table(expression, predicates) : evaluate(expression, predicates);
+        } catch (RuntimeException e) {
+            return error(String.valueOf(e.getMessage()));
+        } finally {
+            metrics.queued.decrementAndGet();
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    // the variables as the predicates settle them come with the cached expression, only the evaluation is batched
+    private String evaluate(String expression, String[] predicates) {
+        ExpressionCache.Entry entry = cache.get(expression, predicates);
+        byte[] assignment = new byte[entry.expression.variableCount()];
+        entry.expression.settle(assignment);
+        return "OK\t" + CompiledExpression.VALUES[batched(ExpressionCache.key(expression), entry.compiled, assignment)] + "\n";
+    }
+
+    private String table(String expression, String[] predicates) {
+        TruthTableGenerator table = cache.truthTable(MAX_TABLE_UNKNOWNS, expression, predicates);
+        StringWriter csv = new StringWriter();
+        try {
+            table.write(TruthTableWriter.csv(csv));
+        } catch (IOException e) {
+            return error(e.getMessage());//a StringWriter doesn't throw
+        }
+        String rows = csv.toString();
+        long lines = rows.chars().filter(c -> c == '\n').count();
+        return "OK\t" + lines + "\n" + rows;
+    }
+
+    /////////////////   BATCHES    /////////////////
+    /*
+     * everything in flight for one expression. the variable ids of an expression are the same whatever its predicates
+     * (the parser interns them before the predicates do), so one CompiledExpression serves every assignment in a batch
+     * */
+    private static final class Group {
+        final ReentrantLock evaluating = new ReentrantLock();//held by the leader of the batch being evaluated
+        Batch open;//still taking requests, guarded by the group itself
+        int users;//requests in here, only changed inside groups.compute
+    }
+
+    private static final class Batch {
+        final CompiledExpression compiled;
+        final List<byte[]> assignments = new ArrayList<>();
+        final CompletableFuture<byte[]> results = new CompletableFuture<>();
+
+        Batch(CompiledExpression compiled) {
+            this.compiled = compiled;
+        }
+    }
+
+    // the first request of a batch leads it, the rest wait for its results and take their own row
+    private byte batched(String key, CompiledExpression compiled, byte[] assignment) {
+        Group group = groups.compute(key, (k, g) -> {
+            if (g == null) g = new Group();
+            g.users++;
+            return g;
+        });
+        try {
+            Batch batch;
+            int row;
+            synchronized (group) {
+                if (group.open == null) group.open = new Batch(compiled);
+                batch = group.open;
+                row = batch.assignments.size();
+                batch.assignments.add(assignment);
+            }
+            if (row == 0) {
+                lead(group, batch);
+            } else {
+                metrics.batched.increment();
+            }
+            return batch.results.join()[row];
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        } finally {
+            groups.computeIfPresent(key, (k, g) -> --g.users == 0 ? null : g);
+        }
+    }
+
+    // waits out the batch before this one, then closes this one and evaluates whatever joined it meanwhile in one go
+    private void lead(Group group, Batch batch) {
+        group.evaluating.lock();
+        try {
+            byte[][] assignments;
+            synchronized (group) {
+                group.open = null;
+                assignments = batch.assignments.toArray(new byte[0][]);
+            }
+            metrics.batches.increment();
+            batch.results.complete(assignments.length == 1
+                    ? new byte[]{batch.compiled.evaluateCode(assignments[0])}
+                    : new BatchEvaluator(batch.compiled).evaluate(assignments));
+        } catch (RuntimeException e) {
+            batch.results.completeExceptionally(e);
+        } finally {
+            group.evaluating.unlock();
+        }
+    }
+
+    private String error(String message) {
+        metrics.errors.increment();
+        return "ERROR\t" + message.replace('\n', ' ') + "\n";
+    }
+
+    /////////////////   METRICS    /////////////////
+    /*
+     * request latency in power of two microsecond buckets (bucket i is under 2^i us), and how many requests
+     * are inside handle() right now. all counters, so reading them never gets in the way of the requests
+     * */
+    public static final class RequestMetrics {
+        private static final int BUCKETS = 32;
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder batched = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            requests.increment();
+            totalNanos.add(nanos);
+            long micros = nanos / 1000;
+            latency.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        public long requests() {
+            return requests.sum();
+        }
+        public long errors() {
+            return errors.sum();
+        }
+        // evaluations, and requests that were answered by a batch some other request led
+        public long batches() {
+            return batches.sum();
+        }
+        public long batched() {
+            return batched.sum();
+        }
+        public int queueDepth() {
+            return queued.get();
+        }
+
+        // upper bound of the bucket the fraction-th request falls in, in microseconds
+        public long latencyPercentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += counts[i] = latency.get(i);
+            long target = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) return 1L << i;
+            }
+            return 0;
+        }
+
+        String response() {
+            long count = requests();
+            String[] lines = {
+                    "requests\t" + count,
+                    "errors\t" + errors(),
+                    "batches\t" + batches(),
+                    "batched\t" + batched(),
+                    "queue_depth\t" + queueDepth(),
+                    "latency_mean_us\t" + (count == 0 ? 0 : totalNanos.sum() / count / 1000),
+                    "latency_p50_us\t" + latencyPercentile(0.5),
+                    "latency_p99_us\t" + latencyPercentile(0.99),
+                    "latency_buckets_us\t" + buckets(),
+            };
+            String response = String.join("\n", lines) + "\n";
+            int lineCount = lines.length;
+            if (Metrics.ENABLED) {
+                // and where the time inside went, see Metrics
+                String operations = Metrics.snapshot().toString();
+                response += operations;
+                lineCount += (int) operations.chars().filter(c -> c == '\n').count();
+            }
+            return "OK\t" + lineCount + "\n" + response;
+        }
+
+        private String buckets() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) counts[i] = latency.get(i);
+            return Arrays.toString(counts);
+        }
+
+        @Override
+        public String toString() {
+            String response = response();
+            return response.substring(response.indexOf('\n') + 1);
+        }
+    }
+}
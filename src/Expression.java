@@ -0,0 +1,143 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+ * A parsed expression and its predicates, frozen so it can be shared between threads.
+ *
+ * LogicTree keeps its answers inside the tree (evaluateNode writes node.validity, the predicates swap ValidityRefs),
+ * so two threads can't use one tree at the same time. Here the tree is copied into flat arrays once and never written again,
+ * everything that changes per evaluation (the variables and the value of every node) lives in an EvaluationContext:
+ *
+ *      Expression shared = Expression.parse("P & ~(S ? Q)", "Q > ~P");
+ *      EvaluationContext context = shared.newContext();    //one per thread / request, cheap
+ *      context.set("S", ConditionalValidity.FALSE).evaluate();
+ *
+ * nodes are numbered children first, shared subexpressions once, the whole expression is the last one.
+ * */
+public final class Expression {
+    static final byte VAR = 0, NOT = 1, AND = 2, OR = 3;
+    private static final int CLOSE = -1, AND_TEXT = -2, OR_TEXT = -3;//the text pieces on describe()'s stack
+
+    private final byte[] ops;
+    private final int[] left, right;    //child nodes, always lower numbers than the parent
+    private final int[] operands;       //variable id for VAR, -1 for an operator that didn't parse (always UNKNOWN)
+    private final SymbolTable symbols;  //own copy, never interned into after the constructor
+    private final PredicatePropagator propagator;
+    private final byte[] settled;       //what the predicates settle the variables on when nothing else is known
+
+    public static Expression parse(String expression, String... predicates) {
+        return new LogicTree(expression, predicates).toExpression();
+    }
+
+    Expression(Node root, SymbolTable treeSymbols, PredicatePropagator propagator, byte[] settled) {
+        List<Node> order = Node.postorder(root);
+        int size = order.size();
+        ops = new byte[size];
+        left = new int[size];
+        right = new int[size];
+        operands = new int[size];
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Node node = order.get(i);
+            index.put(node, i);
+            operands[i] = -1;
+            if (node.isVariable()) {
+                ops[i] = VAR;
+                operands[i] = node.symbol;
+            } else if (node.value == '~') {
+                ops[i] = NOT;
+                left[i] = index.get(node.left);
+            } else if (node.value == '&' || node.value == '?') {
+                ops[i] = node.value == '&' ? AND : OR;
+                left[i] = index.get(node.left);
+                right[i] = index.get(node.right);
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                ops[i] = VAR;
+            }
+        }
+
+        //same ids as the tree's, but a table nobody else holds on to
+        symbols = new SymbolTable();
+        for (int id = 0; id < treeSymbols.size(); id++) symbols.intern(treeSymbols.name(id));
+        this.propagator = propagator;
+        this.settled = settled.clone();
+    }
+
+    public EvaluationContext newContext() {
+        return new EvaluationContext(this);
+    }
+
+    public int nodeCount() {
+        return ops.length;
+    }
+    public int variableCount() {
+        return symbols.size();
+    }
+    public String variableName(int id) {
+        return symbols.name(id);
+    }
+    // -1 if the expression and predicates never mention it
+    public int variableId(String name) {
+        return symbols.lookup(name.toUpperCase());
+    }
+    public boolean isVariable(int node) {
+        return ops[node] == VAR && operands[node] >= 0;
+    }
+
+    // node written back out the way the truth table headers are, left to right off a stack (text pieces are negative)
+    public String describe(int node) {
+        StringBuilder sb = new StringBuilder();
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int next = stack[--top];
+            if (next < 0) {
+                sb.append(next == CLOSE ? ")" : next == AND_TEXT ? "&" : "?");
+                continue;
+            }
+            if (stack.length - top < 4) stack = Arrays.copyOf(stack, stack.length * 2);
+            switch (ops[next]) {
+                case VAR -> sb.append(operands[next] < 0 ? "?" : symbols.name(operands[next]));
+                case NOT -> {
+                    sb.append('~');
+                    stack[top++] = left[next];
+                }
+                default -> {
+                    sb.append('(');
+                    stack[top++] = CLOSE;
+                    stack[top++] = right[next];
+                    stack[top++] = ops[next] == AND ? AND_TEXT : OR_TEXT;
+                    stack[top++] = left[next];
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /////////////////   USED BY EvaluationContext    /////////////////
+    void settle(byte[] variables) {
+        System.arraycopy(settled, 0, variables, 0, settled.length);
+    }
+    void propagate(byte[] variables) {
+        ConditionalValidity[] values = new ConditionalValidity[variables.length];
+        for (int i = 0; i < values.length; i++) values[i] = CompiledExpression.VALUES[variables[i]];
+        propagator.propagate(values);
+        for (int i = 0; i < values.length; i++) variables[i] = (byte) values[i].ordinal();
+    }
+
+    // every node's value into results, only reads this object so any number of threads can be in here at once
+    byte evaluate(byte[] variables, byte[] results) {
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case VAR -> results[i] = operands[i] < 0 ? CompiledExpression.UNKNOWN : variables[operands[i]];
+                case NOT -> results[i] = CompiledExpression.NOT_TABLE[results[left[i]]];
+                case AND -> results[i] = CompiledExpression.AND_TABLE[results[left[i]] * 4 + results[right[i]]];
+                case OR -> results[i] = CompiledExpression.OR_TABLE[results[left[i]] * 4 + results[right[i]]];
+            }
+        }
+        return ops.length == 0 ? CompiledExpression.UNKNOWN : results[ops.length - 1];
+    }
+}
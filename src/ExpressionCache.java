@@ -0,0 +1,185 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/*
+ * Parsed and compiled expressions by their text, so traffic that keeps sending the same rules only parses them once.
+ *
+ * keyed by the expression and its predicates with the whitespace stripped and upper-cased, so "p & q" and "P&Q" are one entry.
+ * every entry weighs about as much as the nodes it holds, and once the total passes maxWeight the least recently used
+ * entries go first (LinkedHashMap in access order).
+ *
+ * safe to share: the map is only touched under its lock, and the parsing itself happens outside of it in a FutureTask
+ * that is put in the map first, so when lots of threads miss on the same key at once one of them parses and the rest wait for it.
+ * what comes back is immutable (Expression, CompiledExpression, a TruthTableGenerator) so callers can use it concurrently too.
+ * an expression that doesn't parse throws IllegalArgumentException with the parser's message, and isn't kept.
+ * */
+public class ExpressionCache {
+    public static final class Entry {
+        public final Expression expression;
+        public final CompiledExpression compiled;
+
+        Entry(Expression expression, CompiledExpression compiled) {
+            this.expression = expression;
+            this.compiled = compiled;
+        }
+
+        int weight() {
+            return expression.nodeCount() + compiled.length() + 1;
+        }
+    }
+
+    private static final class Slot {
+        final FutureTask<?> task;
+        int weight;//0 until the task is done
+
+        Slot(FutureTask<?> task) {
+            this.task = task;
+        }
+    }
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, Slot> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpressionCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public Entry get(String expression, String... predicates) {
+        return load(key(expression, predicates), () -> {
+            LogicTree tree = new LogicTree(expression, predicates);
+            if (tree.isEmpty()) throw new IllegalArgumentException(tree.getParseError());
+            return new Entry(tree.toExpression(), tree.compile());
+        }, Entry::weight);
+    }
+
+    /*
+     * the partial truth table of the expression under its predicates, ready to write (any number of threads can write
+     * the same one). more than maxUnknowns unknown variables throws IllegalArgumentException and isn't kept either.
+     * keys are upper-cased, so the lower case prefix can't collide with get()'s
+     * */
+    public TruthTableGenerator truthTable(int maxUnknowns, String expression, String... predicates) {
+        return load("table\n" + key(expression, predicates), () -> {
+            LogicTree tree = new LogicTree(expression, predicates);
+            if (tree.isEmpty()) throw new IllegalArgumentException(tree.getParseError());
+            String tooBig = tree.checkTruthTableSize(maxUnknowns);
+            if (tooBig != null) throw new IllegalArgumentException(tooBig);
+            return tree.truthTable();
+        }, TruthTableGenerator::weight);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(String key, Callable<T> loader, ToIntFunction<T> weigh) {
+        Slot slot;
+        boolean owner = false;
+        synchronized (entries) {
+            slot = entries.get(key);
+            if (slot == null) {
+                slot = new Slot(new FutureTask<>(loader));
+                entries.put(key, slot);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            misses.increment();
+            slot.task.run();
+            settle(key, slot, weigh);
+        } else {
+            hits.increment();
+        }
+
+        try {
+            return (T) slot.task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for " + key);
+        }
+    }
+
+    // the owner's task is done: count its weight and trim, or drop it if it failed so the next caller tries again
+    @SuppressWarnings("unchecked")
+    private <T> void settle(String key, Slot slot, ToIntFunction<T> weigh) {
+        T value;
+        try {
+            value = (T) slot.task.get();
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            synchronized (entries) {
+                entries.remove(key, slot);
+            }
+            return;
+        }
+        synchronized (entries) {
+            if (entries.get(key) != slot) return;//cleared while it was parsing
+            slot.weight = weigh.applyAsInt(value);
+            weight += slot.weight;
+            Iterator<Slot> it = entries.values().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                Slot eldest = it.next();
+                if (!eldest.task.isDone() || eldest == slot) continue;
+                it.remove();
+                weight -= eldest.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    // normalized the same way PredicatePropagator reads predicates, no regex
+    static String key(String expression, String... predicates) {
+        StringBuilder key = new StringBuilder(PredicatePropagator.stripWhitespace(expression).toUpperCase());
+        for (String predicate : predicates) {
+            key.append('\n').append(PredicatePropagator.stripWhitespace(predicate).toUpperCase());
+        }
+        return key.toString();
+    }
+
+    /////////////////   STATISTICS    /////////////////
+    public long hitCount() {
+        return hits.sum();
+    }
+    public long missCount() {
+        return misses.sum();
+    }
+    public long evictionCount() {
+        return evictions.sum();
+    }
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    public long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public String toString() {
+        long hit = hitCount(), miss = missCount();
+        return "ExpressionCache[size=" + size() + ", weight=" + weight() + "/" + maxWeight
+                + ", hits=" + hit + ", misses=" + miss + ", evictions=" + evictionCount()
+                + ", hitRate=" + (hit + miss == 0 ? 0 : hit * 100 / (hit + miss)) + "%]";
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/*
+ * Single pass tokenizer + shunting-yard parser that builds the Node tree directly.
+ *
+ * The old parser cut the expression into substrings at every level (and rescanned them for the main operator and
+ * the matching parentheses), which is quadratic in the length of the expression. Here every character is looked at
+ * once by the tokenizer and every token is pushed and popped at most once by the parser.
+ *
+ * Precedence, tightest first:
+ *      ~           prefix, a negated parenthesized &/? is pushed inwards with De Morgan's law like before
+ *      & ?         same level and right associative, so A&B?C is still A&(B?C) like the old parser read it
+ *      >           A>B becomes ~A?B
+ *      =           A=B becomes (A&B)?(~A&~B)
+ * all of them work at any depth, not just at the top of the expression.
+ *
+ * Variables are names made of letters, digits and '_' starting with a letter (upper-cased, so p and P are the same),
+ * they are interned into the SymbolTable and the caller hands back the one shared Node for each id, so every use of P is
+ * the same Node. Operators come from a NodeFactory, which can intern them so equal subexpressions are shared as well.
+ * Errors don't throw, they are kept (with a 1 based character position) for the caller to report, same as the rest of LogicTree.
+ * */
+public class ExpressionParser {
+    private static final char VARIABLE = 'V', END = '$';
+
+    private final SymbolTable symbols;
+    private final IntFunction<Node> variables;//symbol id -> the shared Node for it
+    private final NodeFactory factory;
+    // nodes that are already the result of De Morgan's law, so ~(~(A&B)) stays a NOT like before instead of flipping back
+    private final Set<Node> pushedNegations = Collections.newSetFromMap(new IdentityHashMap<>());
+    private String errorMessage;
+    private int errorPosition = -1;
+
+    // tokens, filled by tokenize()
+    private char[] kinds;
+    private int[] symbolIds;
+    private int[] positions;
+    private int tokenCount;
+
+    public ExpressionParser(SymbolTable symbols, IntFunction<Node> variables) {
+        this(symbols, variables, new NodeFactory());
+    }
+    public ExpressionParser(SymbolTable symbols, IntFunction<Node> variables, NodeFactory factory) {
+        this.symbols = symbols;
+        this.variables = variables;
+        this.factory = factory;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    public int getErrorPosition() {
+        return errorPosition;
+    }
+
+    // returns null and sets the error if the expression can't be parsed
+    public Node parse(String input) {
+        errorMessage = null;
+        errorPosition = -1;
+        pushedNegations.clear();
+        if (!tokenize(input)) return null;
+        if (tokenCount == 1) {
+            errorMessage = "String empty";//nothing to point at
+            return null;
+        }
+
+        Deque<Node> operands = new ArrayDeque<>();
+        Deque<Integer> operators = new ArrayDeque<>();//token indexes of ~, (, and binary operators
+        boolean expectOperand = true;
+
+        for (int i = 0; i < tokenCount; i++) {
+            char kind = kinds[i];
+            if (expectOperand) {
+                if (kind == VARIABLE) {
+                    operands.push(variables.apply(symbolIds[i]));
+                    expectOperand = false;
+                } else if (kind == '(' || kind == '~') {
+                    operators.push(i);
+                } else if (kind == END) {
+                    return fail("Expression ends where a variable was expected", positions[i]);
+                } else {
+                    return fail("Expected a variable, '~' or '(' but found '" + kind + "'", positions[i]);
+                }
+            } else {
+                if (isBinary(kind)) {
+                    //right associative, so only pop operators that bind tighter
+                    while (!operators.isEmpty() && binds(kinds[operators.peek()], kind)) {
+                        reduce(kinds[operators.pop()], operands);
+                    }
+                    operators.push(i);
+                    expectOperand = true;
+                } else if (kind == ')') {
+                    while (!operators.isEmpty() && kinds[operators.peek()] != '(') {
+                        reduce(kinds[operators.pop()], operands);
+                    }
+                    if (operators.isEmpty()) return fail("Unmatched ')'", positions[i]);
+                    operators.pop();
+                } else if (kind == END) {
+                    while (!operators.isEmpty()) {
+                        int top = operators.pop();
+                        if (kinds[top] == '(') return fail("Unmatched '('", positions[top]);
+                        reduce(kinds[top], operands);
+                    }
+                } else {
+                    return fail("Expected an operator or ')' but found '" + (kind == VARIABLE ? symbols.name(symbolIds[i]) : String.valueOf(kind)) + "'", positions[i]);
+                }
+            }
+        }
+        return operands.pop();
+    }
+
+    /////////////////   TOKENIZER    /////////////////
+    private boolean tokenize(String input) {
+        int length = input.length();
+        kinds = new char[length + 1];
+        symbolIds = new int[length + 1];
+        positions = new int[length + 1];
+        tokenCount = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+
+            if (Character.isLetter(c)) {
+                int end = i + 1;
+                while (end < length && isNamePart(input.charAt(end))) end++;
+                kinds[tokenCount] = VARIABLE;
+                symbolIds[tokenCount] = symbols.intern(input.substring(i, end).toUpperCase());
+                positions[tokenCount++] = i + 1;
+                i = end - 1;
+                continue;
+            } else if (c == '&' || c == '?' || c == '~' || c == '>' || c == '=' || c == '(' || c == ')') {
+                kinds[tokenCount] = c;
+            } else {
+                fail("Unexpected character '" + c + "'", i + 1);
+                return false;
+            }
+            positions[tokenCount++] = i + 1;
+        }
+        kinds[tokenCount] = END;
+        positions[tokenCount++] = length + 1;
+        return true;
+    }
+
+    static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /////////////////   PARSER HELPERS    /////////////////
+    private static boolean isBinary(char kind) {
+        return kind == '&' || kind == '?' || kind == '>' || kind == '=';
+    }
+    private static int precedence(char kind) {
+        switch (kind) {
+            case '~': return 4;
+            case '&': case '?': return 3;
+            case '>': return 2;
+            case '=': return 1;
+        }
+        return 0;//'('
+    }
+    // should the operator on the stack be applied before pushing incoming?
+    private static boolean binds(char stacked, char incoming) {
+        return stacked != '(' && precedence(stacked) > precedence(incoming);
+    }
+
+    private void reduce(char operator, Deque<Node> operands) {
+        if (operator == '~') {
+            operands.push(negate(operands.pop()));
+            return;
+        }
+        Node right = operands.pop();
+        Node left = operands.pop();
+        switch (operator) {
+            case '&', '?' -> operands.push(binary(operator, left, right));
+            case '>' -> operands.push(binary('?', negate(left), right));//turn to ~p ? q       not p or q      form
+            case '=' -> operands.push(binary('?', binary('&', left, right), binary('&', negate(left), negate(right))));
+        }
+    }
+
+    private Node binary(char operator, Node left, Node right) {
+        return factory.operator(operator, left, right);
+    }
+
+    /*
+     * De Morgan's Law, ~(A&B) becomes ~A?~B all the way down to the variables, anything else just gets a NOT.
+     * explicit stacks instead of recursion so a deeply nested negation can't overflow. A node is only looked at
+     * when it comes off the stack, so the left side is always finished before the right side is checked, same as recursing did
+     * */
+    private Node negate(Node node) {
+        Deque<Node> work = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();//true once a node's children are on the stack, next time it's combined
+        Deque<Node> negated = new ArrayDeque<>();
+        work.push(node);
+        expanded.push(false);
+        while (!work.isEmpty()) {
+            Node current = work.pop();
+            if (expanded.pop()) {
+                char newOp = (current.value == '&') ? '?' : '&';
+                Node right = negated.pop();
+                Node left = negated.pop();
+                Node pushed = binary(newOp, left, right);
+                pushedNegations.add(pushed);
+                negated.push(pushed);
+            } else if ((current.value == '&' || current.value == '?') && !pushedNegations.contains(current)) {
+                work.push(current);
+                expanded.push(true);
+                work.push(current.right);
+                expanded.push(false);
+                work.push(current.left);
+                expanded.push(false);
+            } else {
+                negated.push(factory.operator('~', current, null));
+            }
+        }
+        return negated.pop();
+    }
+
+    private Node fail(String message, int position) {
+        errorMessage = message + " at position " + position;
+        errorPosition = position;
+        return null;
+    }
+}
@@ -0,0 +1,338 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * One expression with predicates that come and go one at a time, for editing rules interactively.
+ *
+ * LogicTree takes all of its predicates up front, so changing one means a new tree, a whole propagation and a whole evaluate().
+ * Here every change only does the work it causes:
+ *      assertPredicate("P>Q")  applies just that predicate, and then only the predicates that mention a variable it changed
+ *      set("Q", FALSE)         same, starting from Q (setting Q again first takes back the earlier set, like retract)
+ *      retract("P>Q")          undoes it through the trail (see below), no rebuild
+ * and afterwards only the nodes above a variable that really changed value are evaluated again. Nodes are numbered
+ * children first (Node.postorder), so walking the dirty ones lowest first always sees a node's children before it.
+ *
+ * every value a predicate or set() changes goes on the trail with what it was before, and every assertion remembers
+ * where the trail was when it started. Retracting puts back everything after that point and replays the assertions
+ * that came after the retracted one, in the same order, so the values are what they would have been without it.
+ * Retracting the latest assertion is just the undo.
+ *
+ * the rules are PredicatePropagator's own (PredicatePropagator.Rules), applied in the order things were asserted
+ * instead of shortest first, so with contradicting predicates where the INVALIDs end up can differ from a LogicTree.
+ * */
+public class IncrementalEvaluator {
+    private static final byte SET = -1;//an assertion made by set() instead of a predicate
+
+    private static final class Assertion {
+        final String text;//normalized predicate, or the variable name for set()
+        final byte kind;
+        final int first, second;
+        final boolean firstNegated, secondNegated;
+        final ConditionalValidity value;//for set()
+        int trailStart;
+
+        Assertion(String text, byte kind, int first, int second, boolean firstNegated, boolean secondNegated, ConditionalValidity value) {
+            this.text = text;
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+            this.firstNegated = firstNegated;
+            this.secondNegated = secondNegated;
+            this.value = value;
+        }
+    }
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    // the expression, children before parents, the whole expression is the last node
+    private final byte[] ops;
+    private final int[] left, right, operands;
+    private final int[][] parents;
+    private final int[] leafOf;//variable id -> its node, -1 if the expression doesn't use it
+    private final byte[] results;
+    private final BitSet dirty = new BitSet();
+    private int reevaluated;
+
+    // the variables and what's been asserted about them
+    private ConditionalValidity[] values = new ConditionalValidity[0];
+    private int[][] occurrences = new int[0][];//variable -> assertions that mention it, oldest first
+    private int[] occurrenceCounts = new int[0];
+    private final List<Assertion> assertions = new ArrayList<>();
+    private int[] trailVariables = new int[64];
+    private ConditionalValidity[] trailValues = new ConditionalValidity[64];
+    private int trailSize;
+
+    private final Propagation propagation = new Propagation();
+
+    public IncrementalEvaluator(String expression) {
+        Map<Integer, Node> variableNodes = new HashMap<>();
+        ExpressionParser parser = new ExpressionParser(symbols, id -> variableNodes.computeIfAbsent(id, i -> new Node(symbols.name(i), i)));
+        Node root = parser.parse(expression);
+        if (root == null) {
+            System.out.println("Error: " + parser.getErrorMessage());
+        }
+
+        List<Node> order = Node.postorder(root);
+        int size = order.size();
+        ops = new byte[size];
+        left = new int[size];
+        right = new int[size];
+        operands = new int[size];
+        results = new byte[size];
+        leafOf = new int[symbols.size()];
+        Arrays.fill(leafOf, -1);
+        Map<Node, Integer> index = new IdentityHashMap<>();
+        int[] parentCounts = new int[size];
+        for (int i = 0; i < size; i++) {
+            Node node = order.get(i);
+            index.put(node, i);
+            operands[i] = -1;
+            if (node.isVariable()) {
+                ops[i] = Expression.VAR;
+                operands[i] = node.symbol;
+                leafOf[node.symbol] = i;
+            } else if (node.value == '~') {
+                ops[i] = Expression.NOT;
+                left[i] = index.get(node.left);
+                parentCounts[left[i]]++;
+            } else if (node.value == '&' || node.value == '?') {
+                ops[i] = node.value == '&' ? Expression.AND : Expression.OR;
+                left[i] = index.get(node.left);
+                right[i] = index.get(node.right);
+                parentCounts[left[i]]++;
+                parentCounts[right[i]]++;
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                ops[i] = Expression.VAR;
+            }
+        }
+        parents = new int[size][];
+        for (int i = 0; i < size; i++) parents[i] = new int[parentCounts[i]];
+        Arrays.fill(parentCounts, 0);
+        for (int i = 0; i < size; i++) {
+            if (ops[i] == Expression.VAR) continue;
+            parents[left[i]][parentCounts[left[i]]++] = i;
+            if (ops[i] != Expression.NOT) parents[right[i]][parentCounts[right[i]]++] = i;
+        }
+
+        growVariables();
+        dirty.set(0, size);
+        reevaluate();
+    }
+
+    /////////////////   CHANGES    /////////////////
+    // false if the predicate didn't parse
+    public boolean assertPredicate(String predicate) {
+        PredicatePropagator.Parsed parsed = PredicatePropagator.parse(predicate, symbols);
+        growVariables();//the variables it named are interned even when the rest didn't parse
+        if (parsed == null) {
+            if (!predicate.isBlank()) System.out.println("Error: " + PredicatePropagator.invalid(predicate));
+            return false;
+        }
+        push(new Assertion(normalize(predicate), parsed.kind(), parsed.first(), parsed.second(),
+                parsed.firstNegated(), parsed.secondNegated(), null));
+        reevaluate();
+        return true;
+    }
+
+    // overrides one variable, the predicates then carry it on to the rest. replaces what an earlier set() of it said
+    public void set(String variable, ConditionalValidity value) {
+        int id = symbols.intern(normalize(variable));
+        growVariables();
+        int earlier = latest(symbols.name(id), true);
+        if (earlier >= 0) remove(earlier);
+        push(new Assertion(symbols.name(id), SET, id, id, false, false, value));
+        reevaluate();
+    }
+
+    // takes back the latest assertPredicate() of this predicate, false if there isn't one
+    public boolean retract(String predicate) {
+        return rollback(latest(normalize(predicate), false), predicate);
+    }
+    // takes back the set() of this variable, false if there isn't one
+    public boolean unset(String variable) {
+        return rollback(latest(normalize(variable), true), variable);
+    }
+
+    private int latest(String text, boolean isSet) {
+        for (int a = assertions.size() - 1; a >= 0; a--) {
+            Assertion assertion = assertions.get(a);
+            if ((assertion.kind == SET) == isSet && assertion.text.equals(text)) return a;
+        }
+        return -1;
+    }
+
+    private boolean rollback(int a, String what) {
+        if (a < 0) {
+            System.out.println("Error: Nothing to retract for " + what);
+            return false;
+        }
+        remove(a);
+        reevaluate();
+        return true;
+    }
+
+    // back to where the trail was before assertion a, then everything after it again
+    private void remove(int a) {
+        List<Assertion> later = new ArrayList<>(assertions.subList(a + 1, assertions.size()));
+        undoTrail(assertions.get(a).trailStart);
+        while (assertions.size() > a) pop();
+        for (Assertion assertion : later) push(assertion);
+    }
+
+    private void push(Assertion assertion) {
+        int a = assertions.size();
+        assertion.trailStart = trailSize;
+        assertions.add(assertion);
+        if (assertion.kind == SET) {
+            propagation.set(assertion.first, assertion.value);
+        } else {
+            watch(assertion.first, a);
+            if (assertion.kind != PredicatePropagator.ASSIGN && assertion.second != assertion.first) watch(assertion.second, a);
+            propagation.enqueue(a);
+        }
+        propagation.run();
+    }
+
+    // only ever the newest, so its occurrences are the last ones in their lists
+    private void pop() {
+        Assertion assertion = assertions.remove(assertions.size() - 1);
+        if (assertion.kind == SET) return;
+        occurrenceCounts[assertion.first]--;
+        if (assertion.kind != PredicatePropagator.ASSIGN && assertion.second != assertion.first) occurrenceCounts[assertion.second]--;
+    }
+
+    private void watch(int variable, int a) {
+        if (occurrenceCounts[variable] == occurrences[variable].length) {
+            occurrences[variable] = Arrays.copyOf(occurrences[variable], Math.max(4, occurrences[variable].length * 2));
+        }
+        occurrences[variable][occurrenceCounts[variable]++] = a;
+    }
+
+    private void undoTrail(int to) {
+        while (trailSize > to) {
+            trailSize--;
+            int variable = trailVariables[trailSize];
+            values[variable] = trailValues[trailSize];
+            trailValues[trailSize] = null;
+            markDirty(variable);
+        }
+    }
+
+    // predicates and set() can bring in variables the expression doesn't have
+    private void growVariables() {
+        int old = values.length;
+        if (symbols.size() <= old) return;
+        values = Arrays.copyOf(values, symbols.size());
+        Arrays.fill(values, old, values.length, ConditionalValidity.UNKNOWN);
+        occurrences = Arrays.copyOf(occurrences, values.length);
+        for (int v = old; v < values.length; v++) occurrences[v] = new int[0];
+        occurrenceCounts = Arrays.copyOf(occurrenceCounts, values.length);
+    }
+
+    /////////////////   PROPAGATION    /////////////////
+    private final class Propagation extends PredicatePropagator.Rules {
+        private int[] queue = new int[16];
+        private boolean[] queued = new boolean[16];
+        private int head, size;
+
+        void enqueue(int a) {
+            if (a >= queued.length) queued = Arrays.copyOf(queued, Math.max(a + 1, queued.length * 2));
+            if (queued[a]) return;
+            if (size == queue.length) {
+                int[] grown = new int[queue.length * 2];
+                for (int i = 0; i < size; i++) grown[i] = queue[(head + i) % queue.length];
+                queue = grown;
+                head = 0;
+            }
+            queued[a] = true;
+            queue[(head + size) % queue.length] = a;
+            size++;
+        }
+
+        void run() {
+            while (size > 0) {
+                int a = queue[head];
+                head = (head + 1) % queue.length;
+                size--;
+                queued[a] = false;
+                Assertion assertion = assertions.get(a);
+                apply(assertion.kind, assertion.first, assertion.firstNegated, assertion.second, assertion.secondNegated);
+            }
+        }
+
+        @Override
+        ConditionalValidity value(int variable) {
+            return values[variable];
+        }
+
+        @Override
+        void set(int variable, ConditionalValidity value) {
+            if (values[variable] == value) return;
+            if (trailSize == trailVariables.length) {
+                trailVariables = Arrays.copyOf(trailVariables, trailSize * 2);
+                trailValues = Arrays.copyOf(trailValues, trailSize * 2);
+            }
+            trailVariables[trailSize] = variable;
+            trailValues[trailSize] = values[variable];
+            trailSize++;
+            values[variable] = value;
+            markDirty(variable);
+            for (int i = 0; i < occurrenceCounts[variable]; i++) enqueue(occurrences[variable][i]);
+        }
+    }
+
+    /////////////////   EVALUATION    /////////////////
+    private void markDirty(int variable) {
+        if (variable < leafOf.length && leafOf[variable] >= 0) dirty.set(leafOf[variable]);
+    }
+
+    // lowest first, a node that comes out the same doesn't dirty its parents
+    private void reevaluate() {
+        reevaluated = 0;
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            dirty.clear(i);
+            reevaluated++;
+            byte old = results[i];
+            results[i] = switch (ops[i]) {
+                case Expression.VAR -> operands[i] < 0 ? CompiledExpression.UNKNOWN : (byte) values[operands[i]].ordinal();
+                case Expression.NOT -> CompiledExpression.NOT_TABLE[results[left[i]]];
+                case Expression.AND -> CompiledExpression.AND_TABLE[results[left[i]] * 4 + results[right[i]]];
+                default -> CompiledExpression.OR_TABLE[results[left[i]] * 4 + results[right[i]]];
+            };
+            if (results[i] != old) {
+                for (int parent : parents[i]) dirty.set(parent);
+            }
+        }
+    }
+
+    /////////////////      OUTPUTS      /////////////////
+    public ConditionalValidity evaluate() {
+        return results.length == 0 ? ConditionalValidity.UNKNOWN : CompiledExpression.VALUES[results[results.length - 1]];
+    }
+    public ConditionalValidity get(String variable) {
+        int id = symbols.lookup(normalize(variable));
+        return id < 0 || id >= values.length ? ConditionalValidity.UNKNOWN : values[id];
+    }
+    // the predicates in force, oldest first
+    public List<String> getPredicates() {
+        List<String> predicates = new ArrayList<>();
+        for (Assertion assertion : assertions) {
+            if (assertion.kind != SET) predicates.add(assertion.text);
+        }
+        return predicates;
+    }
+    // how many nodes the last change had to evaluate again
+    public int getReevaluatedNodes() {
+        return reevaluated;
+    }
+
+    private static String normalize(String text) {
+        return PredicatePropagator.stripWhitespace(text).toUpperCase();
+    }
+}
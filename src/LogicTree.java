@@ -1,354 +1,237 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class LogicTree {
     private Node root;
-    private Node[] nodeReferences = new Node[26];//for A-Z
+    private final boolean quiet;//errors are only kept for getParseError()/getPredicateErrors(), not printed
+    private String parseError;//what the parser said when the expression didn't parse, root is null then
+    private TreeArena arena;//the tree while it's compacted, root and nodeReferences are empty then, see compact()
+    private final SymbolTable symbols = new SymbolTable();
+    private Node[] nodeReferences = new Node[16];//indexed by symbol id, grows with the symbol table
+    private PredicatePropagator propagator = new PredicatePropagator(new String[0], symbols);
+    private int evaluation;//stamp for the current evaluate() call, so shared subexpressions are only evaluated once
+    private final Deque<Node> evaluationStack = new ArrayDeque<>();
 
     public LogicTree(String expression){
-        root = populateTreeInPreorder(expression);
+        quiet = false;
+        root = populateTree(expression, new NodeFactory());
     }
     public LogicTree(String expression, String... predicates){
-        root = populateTreeInPreorder(expression);
+        this(new NodeFactory(), false, expression, predicates);
+    }
+    private LogicTree(NodeFactory factory, boolean quiet, String expression, String[] predicates){
+        this.quiet = quiet;
+        root = populateTree(expression, factory);
         evaluatePredicatesUntilStable(predicates);
         //evaluatePredicates(predicates);
     }
 
+    /*
+     * opt-in: structurally equal subexpressions become one shared node (the tree becomes a DAG),
+     * so they are built, evaluated and shown in the truth table once
+     * */
+    public static LogicTree withSharedSubexpressions(String expression, String... predicates){
+        return new LogicTree(NodeFactory.hashConsing(), false, expression, predicates);
+    }
 
-    /////////////////   POPULATING TREE    /////////////////
-    private Node populateTreeInPreorder(String expression) {
-        if (expression.isEmpty()) {
-            System.out.println("Error: String empty");
-            return null;
-        }
-
-        String preorderedExpression = parseInputToPreorder(expression);
-        //System.out.println("Preorder Expression: " + preorderedExpression);
+    /*
+     * for callers that answer someone other than the console: nothing is printed when the expression or a predicate
+     * doesn't parse, getParseError() and getPredicateErrors() say what was wrong instead
+     * */
+    public static LogicTree quiet(String expression, String... predicates){
+        return new LogicTree(new NodeFactory(), true, expression, predicates);
+    }
 
-        /*
-         Im using a LinkedList, because it enables pass by reference, which a string doesn't offer in java.
-         I could have used two arrays, one for storing characters, and the other for an index, but that isn't very readable
 
-         By using a LinkedList instead of an Arraylist, im able to reduce the cost of remove, which is O(n)
-         down to O(1) by just removing the llNode, while still maintaining the reference and readability I wanted.
-        */
-        LinkedList<Character> list = new LinkedList<>();
-        for (char c : preorderedExpression.toCharArray()) {//toCharArray is faster because it deals with memory in cpp
-            list.add(c);
-        }
-        return populateRecursively(list);
-    }
-    private Node populateRecursively(LinkedList<Character> list) {
-        if (list.isEmpty()) return null;
-        char c = list.pollFirst();
-
-        Node node;
-        if (c == '&' || c == '?' || c == '~') {
-            node = new Node(c);
-        } else if (Character.isLetter(c)) {
-            // new var?
-            if (nodeReferences[c - 'A'] == null) {
-                nodeReferences[c - 'A'] = new Node(c);
-            }
-            node = nodeReferences[c - 'A'];
-        } else {
-            // any other symbol (shouldn’t happen)
-            node = new Node(c);
-        }
-
-        // 2) Recurse to build its subtree
-        if (c == '&' || c == '?') {
-            node.left  = populateRecursively(list);
-            node.right = populateRecursively(list);
-        }
-        else if (c == '~') {
-            node.left = populateRecursively(list);
+    /////////////////   POPULATING TREE    /////////////////
+    private Node populateTree(String expression, NodeFactory factory) {
+        //single pass, builds the nodes straight from the tokens, see ExpressionParser
+        Metrics.Timed start = Metrics.start(Metrics.Operation.PARSE);
+        ExpressionParser parser = new ExpressionParser(symbols, this::variableNode, factory);
+        Node parsed = parser.parse(expression);
+        Metrics.parsed(start, expression.length());
+        if (parsed == null) {
+            parseError = parser.getErrorMessage();
+            if (!quiet) System.out.println("Error: " + parseError);
         }
-        // letters are leaves
-
-        return node;
+        return parsed;
     }
 
-    /////////////////   PARSING AND FORMATTING    /////////////////
-    public String parseInputToPreorder(String input) {
-        //replace any whitespace from string so we don't have to use trim
-        String formattedExpression = input.replaceAll("\\s", "");
-        //checks if main expression is a predicate eg. p>(...) and converts to expression
-        if(formattedExpression.contains(">"))//char for predicates
-        {
-            String[] tokens = formattedExpression.split(">");
-            if (tokens.length != 2) {
-                System.out.println("Error: Invalid predicate-based expression: " + input);
-                return "";
-            }
-            //turn to ~p ? q       not p or q      form
-            formattedExpression = "~" + tokens[0].charAt(0) + "?" + tokens[1];
-
+    // the one shared Node for a variable id, made on first use
+    private Node variableNode(int id) {
+        if (id >= nodeReferences.length) {
+            nodeReferences = Arrays.copyOf(nodeReferences, Math.max(id + 1, nodeReferences.length * 2));
         }
-        return getPreorderRecursively(formattedExpression);
-    }
-    private String getPreorderRecursively(String input) {
-        // De Morgan's Law is checked before opperators incase of (-(...))
-        if (input.startsWith("~(") && input.endsWith(")")) {
-            String innerExpression = input.substring(2, input.length() - 1);
-            int centerOperatorIndex = findMainOperatorIndex(innerExpression);//check if it's just a single variable or a statement
-
-            if (centerOperatorIndex != -1) {
-                char operator = innerExpression.charAt(centerOperatorIndex);
-                String left = innerExpression.substring(0, centerOperatorIndex);
-                String right = innerExpression.substring(centerOperatorIndex + 1);
-
-                //replace operators
-                char newOp = (operator == '&') ? '?' : '&';
-                String newLeft = "~" + left;
-                String newRight = "~" + right;
-
-                //recurse De Morgans law to variables
-                return newOp + getPreorderRecursively(newLeft) + getPreorderRecursively(newRight);
-            } else {
-                return "~" + getPreorderRecursively(innerExpression);
-            }
+        if (nodeReferences[id] == null) {
+            nodeReferences[id] = new Node(symbols.name(id), id);
         }
+        return nodeReferences[id];
+    }
 
-        //single variable, removing parentheses if needed
-        int index = findMainOperatorIndex(input);
-        if (index == -1) {
-            if(input.charAt(0) == '(')
-                return input.substring(1, input.length()-1);
-            else
-                return input;
+    // every variable that has a node, sorted by name so tables and models read the same way every time
+    private List<Node> variablesByName() {
+        expand();
+        List<Node> variables = new ArrayList<>();
+        for (int i = 0; i < symbols.size() && i < nodeReferences.length; i++) {
+            if (nodeReferences[i] != null) variables.add(nodeReferences[i]);
         }
+        variables.sort(Comparator.comparing(node -> node.name));
+        return variables;
+    }
 
-        //expressions eg. p^q without De Morgans Law applied
-        char operator = input.charAt(index);
-        String left = getVarBetweenParentheses(input.substring(0, index));
-        String right = getVarBetweenParentheses(input.substring(index + 1));
-        //System.out.println(operator + "\t" + left + "\t" + right);//debug top to bottom
-        return operator + getPreorderRecursively(left) + getPreorderRecursively(right);
-    }
-
-    //Helper Methods
-    private int findMainOperatorIndex(String s) {
-        int parenCount = 0;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c == '(') parenCount++;
-            else if (c == ')') parenCount--;
-            else if ((c == '&' || c == '?') && parenCount == 0) {
-                return i;
-            }
-        }
-        return -1;
-    }
-    public String getVarBetweenParentheses(String string){
-        // Get contents from this layer between any parentheses `(...)`
-        if (string.charAt(0) == '(') {
-            int openings = 1;
-            for (int i = 1; i < string.length(); i++) {
-                if (string.charAt(i) == '(') openings++;
-                else if (string.charAt(i) == ')') openings--;
-
-                if (openings == 0) {
-                    return string.substring(1, i);
-                }
-            }
-        }
-        return string;
+    public SymbolTable getSymbols() {
+        return symbols;
     }
 
     /*some predicates like motus potens or tollens require ordering, P>Q, Q, but it never knew Q was true
-    * The repititon is like a shimmy, where it keeps updating so that it will always finish with the final solution
-    * so even if you do, R>S, S>Q, R, it will eventually find its way down to Q, and update it.
+    * so even if you do, R>S, S>Q, R, it has to find its way down to Q, and update it.
+    * PredicatePropagator does that with a worklist, only the predicates that mention a changed variable are looked at again
     * */
     private void evaluatePredicatesUntilStable(String[] predicates) {
-        //order from least to greatest so ideally all of the variable setting (p, ~p etc) is done first
-        // cutting down on any Motus Tollens or Motus Potens opperations
-        for(int i=0;i<predicates.length-1;i++)
-        {
-            for(int j=i+1;j<predicates.length;j++)
-            {
-                if(predicates[i].length()>predicates[j].length())
-                {
-                    String temp=predicates[i];
-                    predicates[i]=predicates[j];
-                    predicates[j]=temp;
-                }
-            }
+        propagator = new PredicatePropagator(predicates, symbols, quiet);
+        int variableCount = symbols.size();
+        ConditionalValidity[] values = new ConditionalValidity[variableCount];
+        for (int i = 0; i < variableCount; i++) {
+            //define nodes if undefined
+            if (propagator.mentions(i)) variableNode(i);
+            values[i] = i >= nodeReferences.length || nodeReferences[i] == null ? ConditionalValidity.UNKNOWN : nodeReferences[i].validity.value;
         }
 
-        boolean changed;
-        do {
-            changed = false;
-            ConditionalValidity[] before = new ConditionalValidity[26];
-            for (int i = 0; i < 26; i++) {
-                if (nodeReferences[i] != null) {
-                    before[i] = nodeReferences[i].validity.value;
-                }
-            }
-
-            evaluatePredicates(predicates); // apply all again
+        propagator.propagate(values);
 
-            for (int i = 0; i < 26; i++) {
-                if (nodeReferences[i] != null && before[i] != nodeReferences[i].validity.value) {
-                    changed = true;
-                }
-            }
-        } while (changed);
-    }
-
-    private void evaluatePredicates(String[] predicates) {
-        for (String currentPredicate : predicates) {
-            String formattedPredicate = currentPredicate.replaceAll("\\s", "").toUpperCase();
-            if (formattedPredicate.isEmpty()) continue;
-
-            // 1) IFF (equality) predicates, e.g. "P=Q"
-            if (formattedPredicate.contains("=") && !formattedPredicate.contains(">")) {
-
-                String[] tokens = formattedPredicate.split("=");
-                if (tokens.length != 2) {
-                    System.out.println("Error: Invalid iff predicate: " + currentPredicate);
-                    continue;
-                }
-                //get variable
-                char variable1 = tokens[0].charAt(0);
-                char variable2 = tokens[1].charAt(0);
-                int index1 = variable1 - 'A';
-                int index2 = variable2 - 'A';
-                //made node reference if not initialized
-                if (nodeReferences[index1] == null) nodeReferences[index1] = new Node(variable1);
-                if (nodeReferences[index2] == null) nodeReferences[index2] = new Node(variable2);
-                Node node1 = nodeReferences[index1];
-                Node node2 = nodeReferences[index2];
-
-                // Check equality or invalidate.
-                if (node1.validity.value != ConditionalValidity.UNKNOWN && node2.validity.value != ConditionalValidity.UNKNOWN) {
-                    if (node1.validity.value != node2.validity.value) {
-                        node1.validity = node2.validity = new ValidityRef(ConditionalValidity.INVALID);
-                    } else {
-                        node2.validity = node1.validity;
-                    }
-                }
-                // Propagate known values
-                else if (node1.validity.value != ConditionalValidity.UNKNOWN) {
-                    node2.validity = node1.validity;
-                } else if (node2.validity.value != ConditionalValidity.UNKNOWN) {
-                    node1.validity = node2.validity;
-                } else {
-                    // Both unknown: link references so future sets affect both.
-                    node2.validity = node1.validity;
-                }
-            }
-            // 2) Implication predicates, e.g. "P>Q" or "P>~Q"
-            else if (formattedPredicate.contains(">")) {
-                String[] tokens = formattedPredicate.split(">");
-                if (tokens.length != 2) {
-                    System.out.println("Error: Invalid if-then predicate: " + currentPredicate);
-                    continue;
-                }
-                //check if either value is negative and get char
-                String antecedentStr = tokens[0];
-                String consequentStr = tokens[1];
-                boolean isAntecNegated = antecedentStr.startsWith("~");
-                boolean isConseqNegated = consequentStr.startsWith("~");
-                char antecedentChar = isAntecNegated ? antecedentStr.charAt(1) : antecedentStr.charAt(0);
-                char consequentChar = isConseqNegated ? consequentStr.charAt(1) : consequentStr.charAt(0);
-
-                int antecedentIndex = antecedentChar - 'A';
-                int consequentIndex = consequentChar - 'A';
-                //define undefined nodes
-                if (nodeReferences[antecedentIndex] == null) nodeReferences[antecedentIndex] = new Node(antecedentChar);
-                if (nodeReferences[consequentIndex] == null) nodeReferences[consequentIndex] = new Node(consequentChar);
-                Node antecedentNode = nodeReferences[antecedentIndex];
-                Node consequentNode = nodeReferences[consequentIndex];
-
-                //if its negated, make sure antecedent is TRUE, otherwise it holds no value
-                boolean isAntecedentTrue = isAntecNegated
-                        ? (antecedentNode.validity.value == ConditionalValidity.FALSE)
-                        : (antecedentNode.validity.value == ConditionalValidity.TRUE);
-                ConditionalValidity requiredConsequentValue = isConseqNegated ? ConditionalValidity.FALSE : ConditionalValidity.TRUE;
-
-                // MOTUS POTENS: If antecedent holds true, set any value that is unknown to appropriate value
-                // If it has to "override" a value, somewhere some predicate is WRONG, and thus invalidates that part of the arguement
-                if (isAntecedentTrue) {
-                    if (consequentNode.validity.value == ConditionalValidity.UNKNOWN) {
-                        consequentNode.validity = new ValidityRef(requiredConsequentValue);
-                    } else if (consequentNode.validity.value != requiredConsequentValue) {
-                        antecedentNode.validity = consequentNode.validity = new ValidityRef(ConditionalValidity.INVALID);
-                    }
-                }
-                // MOTUS TOLENS: if consequent is known false (relative to expectation), enforce antecedent false.
-                if (consequentNode.validity.value != ConditionalValidity.UNKNOWN && consequentNode.validity.value != requiredConsequentValue) {
-                    ConditionalValidity requiredAntecedentValue = isAntecNegated ? ConditionalValidity.TRUE : ConditionalValidity.FALSE;
-                    if (antecedentNode.validity.value == ConditionalValidity.UNKNOWN) {
-                        antecedentNode.validity = new ValidityRef(requiredAntecedentValue);
-                    } else if (antecedentNode.validity.value != requiredAntecedentValue) {
-                        antecedentNode.validity = consequentNode.validity = new ValidityRef(ConditionalValidity.INVALID);
-                    }
-                }
-            }
-            // 3) Simple assignments: "P", "~P"
-            else {
-
-                boolean isNegated = formattedPredicate.startsWith("~");
-                char variableChar = isNegated ? formattedPredicate.charAt(1) : formattedPredicate.charAt(0);
-                int variableIndex = variableChar - 'A';
-                //define nodes if undefined
-                if (nodeReferences[variableIndex] == null) nodeReferences[variableIndex] = new Node(variableChar);
-                Node variableNode = nodeReferences[variableIndex];
-
-                ConditionalValidity assignedValidity = isNegated ? ConditionalValidity.FALSE : ConditionalValidity.TRUE;
-
-                //if already assigned a value, statement becomes invalid
-                if (variableNode.validity.value == ConditionalValidity.UNKNOWN) {
-                    variableNode.validity = new ValidityRef(assignedValidity);
-                } else if (variableNode.validity.value != assignedValidity) {
-                    variableNode.validity = new ValidityRef(ConditionalValidity.INVALID);
-                }
+        for (int i = 0; i < variableCount; i++) {
+            if (i < nodeReferences.length && nodeReferences[i] != null && nodeReferences[i].validity.value != values[i]) {
+                nodeReferences[i].validity = new ValidityRef(values[i]);
             }
         }
     }
 
+    /*
+     * when the predicates contradict each other (some variable came out INVALID), the smallest set of them that still
+     * does, as positions in the predicates this tree was made with, sorted. empty when nothing is INVALID.
+     * see PredicatePropagator.explain, it starts from nothing known, same as the constructor did
+     * */
+    public int[] getConflictingPredicates() {
+        ConditionalValidity[] values = new ConditionalValidity[symbols.size()];
+        Arrays.fill(values, ConditionalValidity.UNKNOWN);
+        return propagator.explain(values);
+    }
+
     /////////////////   EVALUATE TREE    /////////////////
     public ConditionalValidity evaluate() {
+        if (arena != null) {
+            // a compacted tree is evaluated where it is, no Nodes needed
+            Metrics.Timed start = Metrics.start(Metrics.Operation.EVALUATE);
+            int evaluated = arena.evaluate();
+            Metrics.evaluated(start, evaluated);
+            return arena.rootValue();
+        }
         if (root == null) {
             System.out.println("Error: Tree is empty.");
             return ConditionalValidity.UNKNOWN;
         }
+        evaluation++;
         return evaluateNode(root);
     }
 
-    private ConditionalValidity evaluateNode(Node node) {
-        if (node == null) return ConditionalValidity.UNKNOWN;
-
-        // If it's a variable (leaf node)
-        if (Character.isLetter(node.value)) {
-            return node.validity.value;
+    // flat version of this tree for evaluating it under lots of assignments, see CompiledExpression
+    public CompiledExpression compile() {
+        return new CompiledExpression(root());
+    }
+    // evaluator that stops at the first deciding operand and learns which ones to try first, see ShortCircuitEvaluator
+    public ShortCircuitEvaluator shortCircuit() {
+        return new ShortCircuitEvaluator(root(), getAssignment());
+    }
+    // evaluator over packed bitset columns of facts, one per variable id, see ColumnarEvaluator
+    public ColumnarEvaluator columnar() {
+        return new ColumnarEvaluator(root(), getAssignment());
+    }
+    // frozen copy of this tree and its predicates that threads can share, see Expression
+    public Expression toExpression() {
+        return new Expression(root(), symbols, propagator, getAssignment());
+    }
+    // the values the predicates settled on, indexed by symbol id, in the format CompiledExpression takes
+    public byte[] getAssignment() {
+        byte[] assignment = new byte[symbols.size()];
+        for (int i = 0; i < assignment.length; i++) {
+            if (arena != null) {
+                assignment[i] = i < arena.variableCount() && arena.variable(i) >= 0 ? arena.variable(i) : CompiledExpression.UNKNOWN;
+                continue;
+            }
+            ConditionalValidity value = i >= nodeReferences.length || nodeReferences[i] == null ? ConditionalValidity.UNKNOWN : nodeReferences[i].validity.value;
+            assignment[i] = (byte) value.ordinal();
         }
+        return assignment;
+    }
 
-        // If it's an operator
-        if (node.value == '~') { // not
-            ConditionalValidity childValidity = evaluateNode(node.left);
-            node.validity.value = negate(childValidity);
-            return node.validity.value;
-        } else if (node.value == '&') { // and
-            ConditionalValidity leftValidity = evaluateNode(node.left);
-            ConditionalValidity rightValidity = evaluateNode(node.right);
-            node.validity.value = and(leftValidity, rightValidity);
-            return node.validity.value;
-        } else if (node.value == '?') { // or
-            ConditionalValidity leftValidity = evaluateNode(node.left);
-            ConditionalValidity rightValidity = evaluateNode(node.right);
-            node.validity.value = or(leftValidity, rightValidity);
-            return node.validity.value;
-        } else {
-            System.out.println("Error: Unknown operator " + node.value);
-            return ConditionalValidity.UNKNOWN;
+    /*
+     * children before parents with an explicit stack, so how deep the tree goes doesn't matter.
+     * a node stays on the stack until both children have been evaluated in this evaluate(), then it's worked out and popped
+     * */
+    private ConditionalValidity evaluateNode(Node root) {
+        if (root == null) return ConditionalValidity.UNKNOWN;
+        Metrics.Timed start = Metrics.start(Metrics.Operation.EVALUATE);
+        int evaluated = 0;
+        Deque<Node> stack = evaluationStack;//kept between calls so evaluate() doesn't allocate, it's always empty afterwards
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.peek();
+            // If it's a variable (leaf node), or already done for this evaluate() through another parent
+            if (node.isVariable() || node.evaluatedIn == evaluation) {
+                stack.pop();
+                continue;
+            }
+            boolean childrenReady = true;
+            if (isPending(node.right)) {
+                stack.push(node.right);
+                childrenReady = false;
+            }
+            if (isPending(node.left)) {
+                stack.push(node.left);
+                childrenReady = false;
+            }
+            if (!childrenReady) continue;
+
+            stack.pop();
+            node.evaluatedIn = evaluation;
+            evaluated++;
+            // If it's an operator
+            if (node.value == '~') { // not
+                node.validity.value = negate(valueOf(node.left));
+            } else if (node.value == '&') { // and
+                node.validity.value = and(valueOf(node.left), valueOf(node.right));
+            } else if (node.value == '?') { // or
+                node.validity.value = or(valueOf(node.left), valueOf(node.right));
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                node.validity.value = ConditionalValidity.UNKNOWN;
+            }
         }
+        Metrics.evaluated(start, evaluated);
+        return root.validity.value;
+    }
+    private boolean isPending(Node node) {
+        return node != null && !node.isVariable() && node.evaluatedIn != evaluation;
+    }
+    private static ConditionalValidity valueOf(Node node) {
+        return node == null ? ConditionalValidity.UNKNOWN : node.validity.value;
     }
 
-    // evaluate node helpers
-    private ConditionalValidity negate(ConditionalValidity val) {
+    // evaluate node helpers, static so the compiled engines can build their lookup tables from the same rules
+    static ConditionalValidity negate(ConditionalValidity val) {
         switch (val) {
             case TRUE: return ConditionalValidity.FALSE;
             case FALSE: return ConditionalValidity.TRUE;
@@ -357,171 +240,321 @@ public class LogicTree {
         }
         return ConditionalValidity.UNKNOWN; // just in case
     }
-    private ConditionalValidity and(ConditionalValidity a, ConditionalValidity b) {
+    static ConditionalValidity and(ConditionalValidity a, ConditionalValidity b) {
         // return most negative value
         if (a == ConditionalValidity.FALSE || b == ConditionalValidity.FALSE) return ConditionalValidity.FALSE;
         if (a == ConditionalValidity.INVALID || b == ConditionalValidity.INVALID) return ConditionalValidity.INVALID;
         if (a == ConditionalValidity.UNKNOWN || b == ConditionalValidity.UNKNOWN) return ConditionalValidity.UNKNOWN;
         return ConditionalValidity.TRUE;
     }
-    private ConditionalValidity or(ConditionalValidity a, ConditionalValidity b) {//return least negative value
+    static ConditionalValidity or(ConditionalValidity a, ConditionalValidity b) {//return least negative value
         if (a == ConditionalValidity.TRUE || b == ConditionalValidity.TRUE) return ConditionalValidity.TRUE;
         if (a == ConditionalValidity.UNKNOWN || b == ConditionalValidity.UNKNOWN) return ConditionalValidity.UNKNOWN;
         if (a == ConditionalValidity.INVALID || b == ConditionalValidity.INVALID) return ConditionalValidity.INVALID;
         return ConditionalValidity.FALSE;
     }
 
-    /////////////////      OUTPUTS      /////////////////
-    public void printTree() {
-        if (root != null) {
-            System.out.println(root);
-        } else {
-            System.out.println("Error: Tree is empty.");
-        }
+    /////////////////   SIMPLIFYING    /////////////////
+    /*
+     * opt-in: swaps the tree for what's left once the variables the predicates fixed to TRUE/FALSE are folded in,
+     * see Simplifier. evaluate(), the truth tables, compile() and everything after this work on the smaller tree,
+     * the variables and their values stay the same, so the answers do too (the subexpression columns are the residual's).
+     * the fixed values are baked in from here on, the SAT and Bdd questions become questions about the residual
+     * */
+    public LogicTree simplify() {
+        if (root() != null) root = new Simplifier().simplify(root);
+        return this;
     }
-    public void printPartialTruthTable() {
-        // 1: Split variables into known and unknown
-        List<Character> unknownVars = new ArrayList<>();
-        List<Character> knownVars = new ArrayList<>();
-        for (int i = 0; i < nodeReferences.length; i++) {
-            Node node = nodeReferences[i];
-            if (node != null) {
-                if (node.validity.value == ConditionalValidity.UNKNOWN) {
-                    unknownVars.add((char) ('A' + i));
-                } else {
-                    knownVars.add((char) ('A' + i));
-                }
-            }
-        }
 
-        if (unknownVars.isEmpty()) {
-            System.out.println("No unknown variables to build a truth table with.");
-            System.out.println("Result: " + evaluate());
-            return;
+    // the tree written back out, the same way the truth table headers are
+    public String getExpressionString() {
+        return root() == null ? "" : getSubexpressionString(root);
+    }
+
+    /////////////////   COMPACTING    /////////////////
+    /*
+     * opt-in, for trees that are kept around in large numbers: the Nodes (and their ValidityRefs) are swapped for a
+     * TreeArena of primitive arrays, about 10 bytes a node instead of 64. evaluate() and getAssignment() work on the
+     * arena as it is, anything that needs Nodes (printing, truth tables, SAT, compile(), ...) gets them back first and
+     * the tree stays expanded until compact() is called again. answers are the same either way
+     * */
+    public LogicTree compact() {
+        if (arena == null && root != null) {
+            byte[] variables = new byte[symbols.size()];
+            for (int i = 0; i < variables.length; i++) {
+                variables[i] = i >= nodeReferences.length || nodeReferences[i] == null ? -1 : (byte) nodeReferences[i].validity.value.ordinal();
+            }
+            arena = new TreeArena(root, variables);
+            root = null;
+            nodeReferences = new Node[16];
         }
+        return this;
+    }
+    public boolean isCompact() {
+        return arena != null;
+    }
 
-        // 2: get all operators for different columns
-        List<Node> subexpressions = new ArrayList<>();
-        collectOperatorNodes(root, subexpressions);
+    // the root, the Nodes rebuilt from the arena first if the tree is compacted
+    private Node root() {
+        expand();
+        return root;
+    }
+    private void expand() {
+        if (arena == null) return;
+        TreeArena compacted = arena;
+        arena = null;
+        root = compacted.toNodes(this::variableNode);
+    }
 
-        // 3: Fill in headers
-        List<String> headers = new ArrayList<>();
-        for (char c : knownVars) headers.add(String.valueOf(c));
-        for (char c : unknownVars) headers.add(String.valueOf(c));
-        List<String> expressionLabels = new ArrayList<>();
-        for (Node n : subexpressions) expressionLabels.add(getSubexpressionString(n));
-        headers.addAll(expressionLabels);
-
-        // 4: Figure out the width for formatting
-        int colCount = headers.size();
-        int[] colWidths = new int[colCount];
-        for (int i = 0; i < colCount; i++) {
-            colWidths[i] = headers.get(i).length();
+    /*
+     * what the tree takes up, in the form it's in now and in the other one, the SymbolTable and predicates aren't counted
+     * since they're the same for both. e.g. "255 nodes: 16320 bytes as Nodes (64.0 a node), 2720 bytes compacted (10.7 a node)"
+     * */
+    public String getMemoryReport() {
+        TreeArena compacted = arena;
+        if (compacted == null) {
+            if (root == null) return "0 nodes";
+            compacted = new TreeArena(root, new byte[0]);
         }
+        int nodes = compacted.size();
+        long asNodes = TreeArena.nodeBytes(nodes), asArena = compacted.bytes();
+        return String.format("%d nodes: %d bytes as Nodes (%.1f a node), %d bytes compacted (%.1f a node)",
+                nodes, asNodes, (double) asNodes / nodes, asArena, (double) asArena / nodes);
+    }
 
-        int rowCount = (int) Math.pow(2, unknownVars.size());//2 possibilities (true, false) for every variable
-        List<List<String>> allRows = new ArrayList<>();
+    /////////////////   SATISFIABILITY    /////////////////
+    /*
+     * Answers these with the SAT solver instead of the truth table, the tree and the predicates are Tseitin encoded.
+     * This is plain two valued logic, so contradicting predicates (what shows up as INVALID) make everything unsatisfiable
+     * */
 
-        for (int i = 0; i < rowCount; i++) {
-            ValidityRef[] backup = new ValidityRef[26];
-            for (int j = 0; j < 26; j++) {
-                if (nodeReferences[j] != null) {
-                    backup[j] = nodeReferences[j].validity;
-                    nodeReferences[j].validity = new ValidityRef(backup[j].value);
-                }
+    // an assignment of every variable that makes the expression TRUE and keeps every predicate, or null if there is none
+    public Map<String, Boolean> checkSatisfiable() {
+        if (root() == null) {
+            System.out.println("Error: Tree is empty.");
+            return null;
+        }
+        SatSolver solver = new SatSolver();
+        TseitinEncoder encoder = new TseitinEncoder(solver);
+        solver.addClause(encoder.encode(root));
+        propagator.encode(encoder, solver);
+        if (!solver.solve()) return null;
+
+        Map<String, Boolean> model = new LinkedHashMap<>();
+        for (Node variable : variablesByName()) {
+            if (encoder.hasVariable(variable.symbol)) {
+                model.put(variable.name, solver.modelValue(encoder.variable(variable.symbol)));
             }
+        }
+        return model;
+    }
 
-            // Set unknowns
-            for (int j = 0; j < unknownVars.size(); j++) {
-                char var = unknownVars.get(j);
-                boolean isTrue = ((i >> (unknownVars.size() - j - 1)) & 1) == 1;
-                nodeReferences[var - 'A'].validity = new ValidityRef(
-                        isTrue ? ConditionalValidity.TRUE : ConditionalValidity.FALSE
-                );
-            }
+    // TRUE under every assignment that keeps the predicates, meaning its negation can't be satisfied
+    public boolean isTautology() {
+        if (root() == null) {
+            System.out.println("Error: Tree is empty.");
+            return false;
+        }
+        SatSolver solver = new SatSolver();
+        TseitinEncoder encoder = new TseitinEncoder(solver);
+        solver.addClause(-encoder.encode(root));
+        propagator.encode(encoder, solver);
+        return !solver.solve();
+    }
 
-            List<String> row = new ArrayList<>();
-            for (char c : knownVars) {
-                String val = formatValidity(nodeReferences[c - 'A'].validity.value);
-                row.add(val);
-            }
-            for (char c : unknownVars) {
-                String val = formatValidity(nodeReferences[c - 'A'].validity.value);
-                row.add(val);
-            }
-            for (Node n : subexpressions) {
-                String val = formatValidity(evaluateNode(n));
-                row.add(val);
+    /////////////////   DECISION DIAGRAMS    /////////////////
+    /*
+     * the expression as a Bdd node. Build two trees into the same Bdd and they are equivalent when the nodes are equal.
+     * two valued, same as the SAT questions above
+     * */
+    public int toBdd(Bdd bdd) {
+        return bdd.build(root());
+    }
+    // same, with every variable the predicates settled on TRUE or FALSE fixed to it (UNKNOWN and INVALID stay free)
+    public int toRestrictedBdd(Bdd bdd) {
+        int node = toBdd(bdd);
+        for (Node variable : variablesByName()) {
+            ConditionalValidity value = variable.validity.value;
+            if (value == ConditionalValidity.TRUE || value == ConditionalValidity.FALSE) {
+                node = bdd.restrict(node, variable.name, value == ConditionalValidity.TRUE);
             }
+        }
+        return node;
+    }
 
-            // Update max widths
-            for (int j = 0; j < row.size(); j++) {
-                colWidths[j] = Math.max(colWidths[j], row.get(j).length());
-            }
+    // TRUE under exactly the same assignments, predicates not included
+    public boolean isEquivalent(LogicTree other) {
+        Bdd bdd = new Bdd();
+        return bdd.isEquivalent(toBdd(bdd), other.toBdd(bdd));
+    }
 
-            allRows.add(row);
+    // how many assignments of every variable make the expression TRUE and keep every predicate
+    public BigInteger countSatisfying() {
+        List<Node> variables = variablesByName();
+        String[] order = new String[variables.size()];
+        for (int i = 0; i < order.length; i++) order[i] = variables.get(i).name;
+        Bdd bdd = new Bdd(order);
+        return bdd.satCount(bdd.and(toBdd(bdd), propagator.encode(bdd)));
+    }
 
-            // Restore
-            for (int j = 0; j < 26; j++) {
-                if (nodeReferences[j] != null) {
-                    nodeReferences[j].validity = backup[j];
-                }
-            }
-        }
+    /*
+     * the partial truth table read off the restricted diagram, one row per path, see Bdd.writeTruthTable.
+     * only the unknown variables the result still depends on get columns
+     * */
+    public void writeCompactTruthTable(TruthTableWriter writer) throws IOException {
+        List<Node> unknownVars = unknownVariables();
+        String[] order = new String[unknownVars.size()];
+        for (int i = 0; i < order.length; i++) order[i] = unknownVars.get(i).name;
+        Bdd bdd = new Bdd(order);
+        bdd.writeTruthTable(toRestrictedBdd(bdd), writer, getSubexpressionString(root()));
+    }
 
-        //header
-        for (int i = 0; i < colCount; i++) {
-            System.out.print(pad(headers.get(i), colWidths[i]));
-            if (i < colCount - 1) System.out.print(" | ");
+    /////////////////      OUTPUTS      /////////////////
+    public void printTree() {
+        if (root() != null) {
+            System.out.println(root);
+        } else {
+            System.out.println("Error: Tree is empty.");
         }
-        System.out.println();
+    }
+    // what printTree prints, as a string
+    public String getTreeString() {
+        return root() == null ? "" : root.toString();
+    }
+    // nothing parsed (the error has been printed already, unless quiet)
+    public boolean isEmpty() {
+        return root == null && arena == null;
+    }
+    // why, for callers that answer someone other than the console. null if it parsed
+    public String getParseError() {
+        return parseError;
+    }
+    // the predicates that were left out because they didn't parse, what was wrong with each, in the order given
+    public List<String> getPredicateErrors() {
+        return Collections.unmodifiableList(propagator.errors());
+    }
+    public void printPartialTruthTable() {
+        if (unknownVariables().isEmpty()) {
+            System.out.println("No unknown variables to build a truth table with.");
+            System.out.println("Result: " + evaluate());
+            return;
+        }
+        try {
+            writePartialTruthTable(TruthTableWriter.text(new OutputStreamWriter(System.out, System.out.charset())));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: Could not write truth table: " + e.getMessage());
+        }
+    }
 
-        //rows
-        for (List<String> row : allRows) {
-            for (int i = 0; i < row.size(); i++) {
-                System.out.print(pad(row.get(i), colWidths[i]));
-                if (i < row.size() - 1) System.out.print(" | ");
-            }
-            System.out.println();
+    /*
+     * Streams the table into the writer one row at a time, memory stays the same no matter how many rows there are.
+     * Known variables come first, then the unknown ones (which are enumerated, first one is the most significant bit),
+     * then every distinct subexpression
+     * */
+    public void writePartialTruthTable(TruthTableWriter writer) throws IOException {
+        truthTable().write(writer);
+    }
+    // same table, rows generated in ranges across the pool and written in order
+    public void writePartialTruthTable(TruthTableWriter writer, ForkJoinPool pool) throws IOException {
+        truthTable().write(writer, pool);
+    }
+    // how many rows of the truth table the expression comes out as value, without writing any of them.
+    // like writing, more than BitTruthTable.MAX_UNKNOWNS unknown variables throws IllegalArgumentException
+    public long countTruthTableRows(ConditionalValidity value) {
+        return truthTable().count(value);
+    }
+
+    TruthTableGenerator truthTable() {
+        // 1: Split variables into known and unknown
+        List<Node> unknownVars = unknownVariables();
+        List<Node> knownVars = new ArrayList<>();
+        for (Node node : variablesByName()) {
+            if (node.validity.value != ConditionalValidity.UNKNOWN) knownVars.add(node);
         }
+
+        // 2: get all operators for different columns
+        List<Node> subexpressions = operatorColumns();
+
+        // 3: Fill in headers
+        List<String> headers = new ArrayList<>();
+        for (Node n : knownVars) headers.add(n.name);
+        for (Node n : unknownVars) headers.add(n.name);
+        for (Node n : subexpressions) headers.add(getSubexpressionString(n));
+
+        // 4: evaluate 64 rows at a time, see BitTruthTable. the tree itself is never touched
+        BitTruthTable table = new BitTruthTable(root, unknownVars);
+        byte[] knownCells = new byte[knownVars.size()];
+        for (int j = 0; j < knownCells.length; j++) knownCells[j] = (byte) knownVars.get(j).validity.value.ordinal();
+        int[] slots = new int[unknownVars.size() + subexpressions.size()];
+        for (int j = 0; j < unknownVars.size(); j++) slots[j] = table.slotOf(unknownVars.get(j));
+        for (int j = 0; j < subexpressions.size(); j++) slots[unknownVars.size() + j] = table.slotOf(subexpressions.get(j));
+
+        return new TruthTableGenerator(headers.toArray(new String[0]), table, knownCells, slots, root == null ? -1 : table.slotOf(root));
+    }
+    // the truth table has 2^this many rows
+    public int countUnknownVariables() {
+        return unknownVariables().size();
     }
-    //helper to get nodes
-    private void collectOperatorNodes(Node node, List<Node> list) {
-        if (node == null) return;
-        if (!Character.isLetter(node.value)) list.add(node);
-        collectOperatorNodes(node.left, list);
-        collectOperatorNodes(node.right, list);
-    }
-
-    // Converts nodes back into strings
-    private String getSubexpressionString(Node node) {
-        if (node == null) return "";
-        if (Character.isLetter(node.value)) return String.valueOf(node.value);
-        String left = getSubexpressionString(node.left);
-        String right = getSubexpressionString(node.right);
-        switch (node.value) {
-            case '~': return "~" + left;
-            case '&': return "(" + left + "&" + right + ")";
-            case '?': return "(" + left + "?" + right + ")";
-            default: return "(" + left + node.value + right + ")";
+    // null if the truth table has at most maxUnknowns unknown variables, otherwise why it's too big to write
+    public String checkTruthTableSize(int maxUnknowns) {
+        int unknowns = countUnknownVariables();
+        return unknowns <= maxUnknowns ? null : "Truth table of " + unknowns + " unknown variables is over the limit of " + maxUnknowns;
+    }
+    private List<Node> unknownVariables() {
+        List<Node> unknownVars = new ArrayList<>();
+        for (Node node : variablesByName()) {
+            if (node.validity.value == ConditionalValidity.UNKNOWN) unknownVars.add(node);
         }
+        return unknownVars;
     }
-
-    //helper convert enum
-    private String formatValidity(ConditionalValidity val) {
-        return switch (val) {
-            case TRUE -> "T";
-            case FALSE -> "F";
-            case UNKNOWN -> "?";
-            case INVALID -> "X";
-        };
+    // the operators that get a column in the truth table, root first
+    List<Node> operatorColumns() {
+        List<Node> subexpressions = new ArrayList<>();
+        collectOperatorNodes(root(), subexpressions, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return subexpressions;
+    }
+    //helper to get nodes, shared subexpressions only get one column. preorder, the stack stands in for the recursion
+    private void collectOperatorNodes(Node root, List<Node> list, Set<Node> seen) {
+        Deque<Node> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (!seen.add(node)) continue;
+            if (!node.isVariable()) list.add(node);
+            if (node.right != null) stack.push(node.right);
+            if (node.left != null) stack.push(node.left);
+        }
     }
 
-    // Pad string to fixed width (left-aligned)
-    private String pad(String s, int width) {
-        while (s.length() < width) {
-            s += " ";
+    /*
+     * Converts nodes back into strings. written left to right off a stack of what's still to come,
+     * either a node or a piece of text, so it's one StringBuilder and no recursion
+     * */
+    private String getSubexpressionString(Node root) {
+        StringBuilder sb = new StringBuilder();
+        Deque<Object> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+        while (!stack.isEmpty()) {
+            Object next = stack.pop();
+            if (next instanceof String text) {
+                sb.append(text);
+                continue;
+            }
+            Node node = (Node) next;
+            if (node.isVariable()) {
+                sb.append(node.name);
+            } else if (node.value == '~') {
+                sb.append('~');
+                if (node.left != null) stack.push(node.left);
+            } else {
+                // pushed backwards: ( left op right )
+                sb.append('(');
+                stack.push(")");
+                if (node.right != null) stack.push(node.right);
+                stack.push(String.valueOf(node.value));
+                if (node.left != null) stack.push(node.left);
+            }
         }
-        return s;
+        return sb.toString();
     }
 }
@@ -2,7 +2,17 @@ import java.util.LinkedList;
 import java.util.Scanner;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length > 0 && args[0].equals("--serve")) {
+            //long running, see EvaluationServer
+            EvaluationServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            //whole files of bundles, see BulkRunner
+            BulkRunner.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         System.out.println("Write your logical expression, followed by its predicates.\n");
         System.out.println("\tFormatting Examples:\nExpression:\tP & ~(S ? Q)\nPredicates:\tP\n\t\t\tQ > ~P");
         System.out.println("\nAnd: &\t Or: ?\t Not: ~\t Iff: =\t If-Then: >\n");
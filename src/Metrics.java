@@ -0,0 +1,260 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Where the time goes: how long parsing, predicate propagation, evaluate() and truth tables take, and how much work they do.
+ *
+ * off unless the JVM is started with -Dlogic.metrics=true. ENABLED is a static final, so when it's off every hook below
+ * is an empty method the JIT inlines away, the call sites pay nothing (not even System.nanoTime(), start() returns null).
+ * when it's on, everything goes into LongAdders (striped, so threads don't fight over one counter) and
+ * power of two nanosecond histograms, and every operation is also a JFR event (category "Logical Expression"),
+ * so a flight recording shows them next to GC and the rest without attaching a profiler (no stack traces, there are a lot of them).
+ * the event is begun in start() and ended in the hook, so its duration is the operation's and JFR's threshold setting
+ * can keep only the slow ones:
+ *
+ *      java -Dlogic.metrics=true -XX:StartFlightRecording=filename=run.jfr -jar logical-expression.jar --batch ...
+ *
+ * snapshot() reads everything at once without stopping anyone, reset() starts over.
+ * */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("logic.metrics");
+
+    public enum Operation { PARSE, PROPAGATE, EVALUATE, TRUTH_TABLE }
+    public enum Counter {
+        PREDICATES_APPLIED,     // rule applications the propagation worklist made before it was stable
+        INVALID_CONFLICTS,      // times a predicate had to set a variable INVALID
+        NODES_EVALUATED,        // operator nodes evaluate() worked out
+        TRUTH_TABLE_ROWS        // rows written
+    }
+
+    private static final Histogram[] OPERATIONS = new Histogram[Operation.values().length];
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    static {
+        for (int i = 0; i < OPERATIONS.length; i++) OPERATIONS[i] = new Histogram();
+        for (int i = 0; i < COUNTERS.length; i++) COUNTERS[i] = new LongAdder();
+    }
+
+    private Metrics() {
+    }
+
+    /////////////////   HOOKS    /////////////////
+    // what the hooks below take, the operation's event already begun, null when metrics are off
+    static Timed start(Operation operation) {
+        if (!ENABLED) return null;
+        Timed event = switch (operation) {
+            case PARSE -> new ParseEvent();
+            case PROPAGATE -> new PropagateEvent();
+            case EVALUATE -> new EvaluateEvent();
+            case TRUTH_TABLE -> new TruthTableEvent();
+        };
+        event.begin();
+        event.started = System.nanoTime();
+        return event;
+    }
+
+    static void parsed(Timed timed, int length) {
+        if (!ENABLED) return;
+        ParseEvent event = (ParseEvent) finish(timed, Operation.PARSE);
+        if (event.shouldCommit()) {
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    static void propagated(Timed timed, int predicates, int applied, int conflicts) {
+        if (!ENABLED) return;
+        PropagateEvent event = (PropagateEvent) finish(timed, Operation.PROPAGATE);
+        count(Counter.PREDICATES_APPLIED, applied);
+        count(Counter.INVALID_CONFLICTS, conflicts);
+        if (event.shouldCommit()) {
+            event.predicates = predicates;
+            event.applied = applied;
+            event.conflicts = conflicts;
+            event.commit();
+        }
+    }
+
+    static void evaluated(Timed timed, int nodes) {
+        if (!ENABLED) return;
+        EvaluateEvent event = (EvaluateEvent) finish(timed, Operation.EVALUATE);
+        count(Counter.NODES_EVALUATED, nodes);
+        if (event.shouldCommit()) {
+            event.nodes = nodes;
+            event.commit();
+        }
+    }
+
+    static void tableWritten(Timed timed, long rows) {
+        if (!ENABLED) return;
+        TruthTableEvent event = (TruthTableEvent) finish(timed, Operation.TRUTH_TABLE);
+        count(Counter.TRUTH_TABLE_ROWS, rows);
+        if (event.shouldCommit()) {
+            event.rows = rows;
+            event.commit();
+        }
+    }
+
+    // ends the event and puts its time in the histogram
+    private static Timed finish(Timed event, Operation operation) {
+        event.end();
+        OPERATIONS[operation.ordinal()].record(System.nanoTime() - event.started);
+        return event;
+    }
+    private static void count(Counter counter, long amount) {
+        if (amount != 0) COUNTERS[counter.ordinal()].add(amount);
+    }
+
+    /////////////////   READING    /////////////////
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    public static void reset() {
+        for (Histogram histogram : OPERATIONS) histogram.reset();
+        for (LongAdder counter : COUNTERS) counter.reset();
+    }
+
+    public static final class Snapshot {
+        private final long[] calls = new long[OPERATIONS.length];
+        private final long[] totalNanos = new long[OPERATIONS.length];
+        private final long[] maxNanos = new long[OPERATIONS.length];
+        private final long[][] buckets = new long[OPERATIONS.length][];
+        private final long[] counters = new long[COUNTERS.length];
+
+        private Snapshot() {
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                Histogram histogram = OPERATIONS[i];
+                calls[i] = histogram.count.sum();
+                totalNanos[i] = histogram.total.sum();
+                maxNanos[i] = histogram.max.get();
+                buckets[i] = new long[Histogram.BUCKETS];
+                for (int b = 0; b < Histogram.BUCKETS; b++) buckets[i][b] = histogram.buckets[b].sum();
+            }
+            for (int i = 0; i < COUNTERS.length; i++) counters[i] = COUNTERS[i].sum();
+        }
+
+        public long calls(Operation operation) {
+            return calls[operation.ordinal()];
+        }
+        public long totalNanos(Operation operation) {
+            return totalNanos[operation.ordinal()];
+        }
+        public long maxNanos(Operation operation) {
+            return maxNanos[operation.ordinal()];
+        }
+        // upper bound of the bucket the fraction-th call falls in
+        public long percentileNanos(Operation operation, double fraction) {
+            long[] counts = buckets[operation.ordinal()];
+            long target = (long) Math.ceil(calls[operation.ordinal()] * fraction);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= target && seen > 0) return 1L << b;
+            }
+            return 0;
+        }
+        public long count(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+        public double truthTableRowsPerSecond() {
+            long nanos = totalNanos(Operation.TRUTH_TABLE);
+            return nanos == 0 ? 0 : count(Counter.TRUTH_TABLE_ROWS) * 1e9 / nanos;
+        }
+
+        // name <TAB> value, one per line
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Operation operation : Operation.values()) {
+                String name = operation.name().toLowerCase();
+                long n = calls(operation);
+                sb.append(name).append("_calls\t").append(n).append('\n');
+                sb.append(name).append("_mean_ns\t").append(n == 0 ? 0 : totalNanos(operation) / n).append('\n');
+                sb.append(name).append("_p50_ns\t").append(percentileNanos(operation, 0.5)).append('\n');
+                sb.append(name).append("_p99_ns\t").append(percentileNanos(operation, 0.99)).append('\n');
+                sb.append(name).append("_max_ns\t").append(maxNanos(operation)).append('\n');
+            }
+            for (Counter counter : Counter.values()) {
+                sb.append(counter.name().toLowerCase()).append('\t').append(count(counter)).append('\n');
+            }
+            sb.append("truth_table_rows_per_second\t").append(Math.round(truthTableRowsPerSecond())).append('\n');
+            return sb.toString();
+        }
+    }
+
+    // bucket b counts the calls that took under 2^b nanoseconds (the last one everything longer)
+    private static final class Histogram {
+        static final int BUCKETS = 48;
+
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            Arrays.setAll(buckets, b -> new LongAdder());
+        }
+
+        void record(long nanos) {
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) bucket.reset();
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+    }
+
+    /////////////////   JFR EVENTS    /////////////////
+    // every operation's event, started is for the histograms (transient, so it isn't part of the recording)
+    abstract static class Timed extends Event {
+        transient long started;
+    }
+
+    @Name("logic.Parse")
+    @Label("Parse")
+    @Category("Logical Expression")
+    @StackTrace(false)
+    static final class ParseEvent extends Timed {
+        @Label("Expression Length") int length;
+    }
+
+    @Name("logic.Propagate")
+    @Label("Propagate Predicates")
+    @Category("Logical Expression")
+    @StackTrace(false)
+    static final class PropagateEvent extends Timed {
+        @Label("Predicates") int predicates;
+        @Label("Applied") @Description("Rule applications until the values were stable") int applied;
+        @Label("INVALID Conflicts") int conflicts;
+    }
+
+    @Name("logic.Evaluate")
+    @Label("Evaluate")
+    @Category("Logical Expression")
+    @StackTrace(false)
+    static final class EvaluateEvent extends Timed {
+        @Label("Nodes Evaluated") int nodes;
+    }
+
+    @Name("logic.TruthTable")
+    @Label("Truth Table")
+    @Category("Logical Expression")
+    @StackTrace(false)
+    static final class TruthTableEvent extends Timed {
+        @Label("Rows") long rows;
+    }
+}
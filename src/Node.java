@@ -1,7 +1,18 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
 public class Node{
     public char value;
     public ValidityRef validity;
     public Node left, right;
+    public String name;//variable name, null for operators
+    public int symbol = -1;//variable id in the tree's SymbolTable, -1 for operators
+    int evaluatedIn;//last LogicTree.evaluate() that computed this node, see LogicTree.evaluation
 
     public Node(char value) {
         left = right = null;
@@ -13,12 +24,46 @@ public class Node{
         this.validity = new ValidityRef(validity); // Also matches the first constructor!
         this.value = value;
     }
+    public Node(String name, int symbol) {
+        this(name.charAt(0));
+        this.name = name;
+        this.symbol = symbol;
+    }
 
-    //adapted from answers from https://stackoverflow.com/questions/4965335/how-to-print-binary-tree-diagram-in-java
-    public String toString() {
-        return this.toString(new StringBuilder(), true, new StringBuilder()).toString();
+    public boolean isVariable() {
+        return symbol >= 0;
+    }
+
+    /*
+     * every distinct node reachable from root, children before their parents.
+     * variable nodes are shared between parents so they are only listed once.
+     * done with an explicit stack so a deep expression can't overflow the call stack
+     * */
+    static List<Node> postorder(Node root) {
+        List<Node> order = new ArrayList<>();
+        if (root == null) return order;
+        Set<Node> emitted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Node> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.peek();
+            if (emitted.contains(node)) {
+                stack.pop();
+            } else if (expanded.add(node)) {
+                //right is pushed first so left gets finished first
+                if (node.right != null && !emitted.contains(node.right)) stack.push(node.right);
+                if (node.left != null && !emitted.contains(node.left)) stack.push(node.left);
+            } else {
+                stack.pop();
+                emitted.add(node);
+                order.add(node);
+            }
+        }
+        return order;
     }
 
+    //adapted from answers from https://stackoverflow.com/questions/4965335/how-to-print-binary-tree-diagram-in-java
     /*
      * Code Breakdown:
      * takes a StringBuilder which contains a more efficient string concatenation.
@@ -28,27 +73,65 @@ public class Node{
      * after reading this article, im updating some  incorporate high quantity concatenations with StringBuilder.
      *
      * the size of the string is unknown, hence an empty constructor use.
-     * pass by reference because sb is an object makes recursion possible and readable
      *
      * the "isTail" boolean indicates if the node is the only remaining child of the branch or not.
      * the right subtree prints '|' when there is another node "above" (to the right of) it, whereas left prints '|' below.
      * if its not the tail of something, then it prints space until that specific line IS a tail, because every
      * printed line will have a tail on it.
+     *
+     * it used to recurse right subtree, node, left subtree, which overflows the stack on very deep trees, so now
+     * that order is kept with an explicit stack of frames instead. every frame only remembers how long its prefix is,
+     * the prefix itself is one StringBuilder that children append to and that gets cut back when we return to the parent.
+     *
+     * every line is indented by its depth, which made a 100k deep tree ~20GB of spaces, so past MAX_INDENT characters
+     * only the innermost MAX_INDENT are written, after a '…'.
      * */
-    private StringBuilder toString(StringBuilder prefix, boolean isTail, StringBuilder sb) {
-        if(right!=null) {
-            right.toString(new StringBuilder().append(prefix).append(isTail ? "│   " : "    "), false, sb);
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder prefix = new StringBuilder();
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(this, 0, true));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            prefix.setLength(frame.prefixLength);
+            if (!frame.rightDone) {
+                frame.rightDone = true;
+                if (frame.node.right != null) {
+                    prefix.append(frame.isTail ? "│   " : "    ");
+                    stack.push(new Frame(frame.node.right, prefix.length(), false));
+                }
+                continue;
+            }
+            stack.pop();
+            Node node = frame.node;
+            String stringName = node.isVariable() ? node.name : String.valueOf(node.value);
+            if (node.value == '?') stringName = "OR";
+            else if (node.value == '&') stringName = "AND";
+            else if (node.value == '~') stringName = "NOT";
+
+            if (prefix.length() > MAX_INDENT) sb.append('…').append(prefix, prefix.length() - MAX_INDENT, prefix.length());
+            else sb.append(prefix);
+            sb.append(frame.isTail ? "└── " : "┌── ").append(stringName).append(": ").append(node.validity.value).append("\n");
+            if (node.left != null) {
+                prefix.append(frame.isTail ? "    " : "│   ");
+                stack.push(new Frame(node.left, prefix.length(), true));
+            }
         }
-        String stringName = String.valueOf(value);
-        if (value == '?') stringName = "OR";
-        else if (value == '&') stringName = "AND";
-        else if (value == '~') stringName = "NOT";
-
-        sb.append(prefix).append(isTail ? "└── " : "┌── ").append(stringName).append(": ").append(validity.value).append("\n");
-        if(left!=null) {
-            left.toString(new StringBuilder().append(prefix).append(isTail ? "    " : "│   "), true, sb);
+        return sb.toString();
+    }
+
+    static final int MAX_INDENT = 256;//64 levels
+
+    private static final class Frame {
+        final Node node;
+        final int prefixLength;
+        final boolean isTail;
+        boolean rightDone;
+
+        Frame(Node node, int prefixLength, boolean isTail) {
+            this.node = node;
+            this.prefixLength = prefixLength;
+            this.isTail = isTail;
         }
-        return sb;
     }
 }
-
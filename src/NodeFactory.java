@@ -0,0 +1,59 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Where the parser gets its operator nodes from.
+ * The plain factory always makes a new Node, the hash-consing one hands back the existing node when the same
+ * (operator, left, right) has been built before, which turns the tree into a DAG. Variables are already shared through
+ * nodeReferences and the children are interned before their parents, so comparing children by identity is enough
+ * to catch structurally equal subtrees.
+ * */
+public class NodeFactory {
+    public Node operator(char operator, Node left, Node right) {
+        Node node = new Node(operator);
+        node.left = left;
+        node.right = right;
+        return node;
+    }
+
+    public static NodeFactory hashConsing() {
+        return new HashConsing();
+    }
+
+    private static final class HashConsing extends NodeFactory {
+        private final Map<Key, Node> table = new HashMap<>();
+
+        @Override
+        public Node operator(char operator, Node left, Node right) {
+            Key key = new Key(operator, left, right);
+            Node node = table.get(key);
+            if (node == null) {
+                node = super.operator(operator, left, right);
+                table.put(key, node);
+            }
+            return node;
+        }
+    }
+
+    private static final class Key {
+        private final char operator;
+        private final Node left, right;
+
+        Key(char operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return operator == other.operator && left == other.left && right == other.right;
+        }
+        @Override
+        public int hashCode() {
+            return (operator * 31 + System.identityHashCode(left)) * 31 + System.identityHashCode(right);
+        }
+    }
+}
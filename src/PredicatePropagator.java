@@ -0,0 +1,450 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Applies the predicates to the variables until nothing changes any more, with a worklist instead of passes.
+ *
+ * The old loop reapplied every predicate and compared every variable until a whole pass changed nothing, so a chain
+ * like R>S, S>Q, R needed a pass per link. Here the predicates are parsed once, indexed by the variables they mention,
+ * and whenever a variable changes only the predicates that mention it are queued again.
+ * Values only ever move UNKNOWN -> TRUE/FALSE -> INVALID, so every predicate is revisited at most a few times per variable.
+ *
+ * The rules are the same ones evaluatePredicates used:
+ *      P, ~P       set the variable, INVALID if it already holds the other value
+ *      P>Q, P>~Q   motus potens and motus tollens, INVALID if either has to be overridden
+ *      P=Q         copies a known value across, INVALID if both are known and differ
+ *
+ * explain() says which predicates an INVALID came from, see CONFLICTS
+ * */
+public class PredicatePropagator {
+    static final byte ASSIGN = 0, IMPLIES = 1, IFF = 2;
+
+    private final byte[] kinds;
+    private final int[] first, second;//variable indexes, second is unused for ASSIGN
+    private final boolean[] firstNegated, secondNegated;
+    private final int count;
+    private final int[] sources;//where each parsed predicate was in the array the constructor got
+    private final SymbolTable symbols;
+    private boolean[] mentioned;
+    private final int[][] occurrences;//variable -> predicates that mention it
+    private final List<String> errors = new ArrayList<>();
+
+    /*
+     * variables are looked up in (or added to) the tree's symbol table, so ids line up with the tree's.
+     * predicates that can't be read are left out and printed, unless quiet (errors() has them either way)
+     * */
+    public PredicatePropagator(String[] predicates, SymbolTable symbols) {
+        this(predicates, symbols, false);
+    }
+    public PredicatePropagator(String[] predicates, SymbolTable symbols, boolean quiet) {
+        this.symbols = symbols;
+        int n = predicates.length;
+        kinds = new byte[n];
+        first = new int[n];
+        second = new int[n];
+        firstNegated = new boolean[n];
+        secondNegated = new boolean[n];
+        sources = new int[n];
+        mentioned = new boolean[16];
+
+        //order from least to greatest so ideally all of the variable setting (p, ~p etc) is done first
+        // cutting down on any Motus Tollens or Motus Potens opperations. key = length, then original position, so it stays stable
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) order[i] = ((long) predicates[i].length() << 32) | i;
+        Arrays.sort(order);
+
+        int parsed = 0;
+        boolean[] unreadable = new boolean[n];
+        for (long key : order) {
+            String predicate = predicates[(int) key];
+            if (parse(predicate, parsed)) sources[parsed++] = (int) key;
+            else unreadable[(int) key] = !stripWhitespace(predicate).isEmpty();
+        }
+        count = parsed;
+        for (int i = 0; i < n; i++) {
+            if (!unreadable[i]) continue;
+            errors.add(invalid(predicates[i]));
+            if (!quiet) System.out.println("Error: " + invalid(predicates[i]));
+        }
+
+        int variableCount = symbols.size();
+        int[] perVariable = new int[variableCount];
+        for (int p = 0; p < count; p++) {
+            perVariable[first[p]]++;
+            if (kinds[p] != ASSIGN && second[p] != first[p]) perVariable[second[p]]++;
+        }
+        occurrences = new int[variableCount][];
+        for (int v = 0; v < variableCount; v++) occurrences[v] = new int[perVariable[v]];
+        Arrays.fill(perVariable, 0);
+        for (int p = 0; p < count; p++) {
+            occurrences[first[p]][perVariable[first[p]]++] = p;
+            if (kinds[p] != ASSIGN && second[p] != first[p]) occurrences[second[p]][perVariable[second[p]]++] = p;
+        }
+    }
+
+    // what was wrong with every predicate that was left out, in the order they were given
+    List<String> errors() {
+        return errors;
+    }
+
+    // true if some predicate talks about this variable, LogicTree makes a node for it even if it stays UNKNOWN
+    public boolean mentions(int variable) {
+        return variable < mentioned.length && mentioned[variable];
+    }
+
+    /*
+     * values is indexed by variable id (at least symbols.size() long) and is updated in place.
+     * the worklist lives only for the call, nothing here is written after the constructor, so one propagator can be
+     * shared by any number of threads as long as each passes in its own values
+     * */
+    public void propagate(ConditionalValidity[] values) {
+        Metrics.Timed start = Metrics.start(Metrics.Operation.PROPAGATE);
+        Worklist worklist = new Worklist(values, null, false);
+        worklist.run();
+        Metrics.propagated(start, count, worklist.applied, worklist.conflicts);
+    }
+
+    /////////////////   RULES    /////////////////
+    /*
+     * the rules on their own, for one predicate at a time. whoever applies them says where the values live
+     * and what happens when set() changes one (the Worklist here queues the predicates that mention it again,
+     * IncrementalEvaluator also records it on its trail)
+     * */
+    abstract static class Rules {
+        abstract ConditionalValidity value(int variable);
+        abstract void set(int variable, ConditionalValidity value);
+
+        final void apply(byte kind, int first, boolean firstNegated, int second, boolean secondNegated) {
+            switch (kind) {
+                case ASSIGN -> {
+                    int variable = first;
+                    ConditionalValidity assignedValidity = firstNegated ? ConditionalValidity.FALSE : ConditionalValidity.TRUE;
+                    //if already assigned a value, statement becomes invalid
+                    if (value(variable) == ConditionalValidity.UNKNOWN) {
+                        set(variable, assignedValidity);
+                    } else if (value(variable) != assignedValidity) {
+                        set(variable, ConditionalValidity.INVALID);
+                    }
+                }
+                case IFF -> {
+                    int variable1 = first, variable2 = second;
+                    ConditionalValidity value1 = literal(value(variable1), firstNegated);
+                    ConditionalValidity value2 = literal(value(variable2), secondNegated);
+                    // Check equality or invalidate.
+                    if (value1 != ConditionalValidity.UNKNOWN && value2 != ConditionalValidity.UNKNOWN) {
+                        if (value1 != value2) {
+                            set(variable1, ConditionalValidity.INVALID);
+                            set(variable2, ConditionalValidity.INVALID);
+                        }
+                    }
+                    // Propagate known values, both unknown has nothing to pass on yet
+                    else if (value1 != ConditionalValidity.UNKNOWN) {
+                        set(variable2, literal(value1, secondNegated));
+                    } else if (value2 != ConditionalValidity.UNKNOWN) {
+                        set(variable1, literal(value2, firstNegated));
+                    }
+                }
+                case IMPLIES -> {
+                    int antecedent = first, consequent = second;
+                    boolean isAntecNegated = firstNegated, isConseqNegated = secondNegated;
+
+                    //if its negated, make sure antecedent is TRUE, otherwise it holds no value
+                    boolean isAntecedentTrue = isAntecNegated
+                            ? (value(antecedent) == ConditionalValidity.FALSE)
+                            : (value(antecedent) == ConditionalValidity.TRUE);
+                    ConditionalValidity requiredConsequentValue = isConseqNegated ? ConditionalValidity.FALSE : ConditionalValidity.TRUE;
+
+                    // MOTUS POTENS: If antecedent holds true, set any value that is unknown to appropriate value
+                    // If it has to "override" a value, somewhere some predicate is WRONG, and thus invalidates that part of the arguement
+                    if (isAntecedentTrue) {
+                        if (value(consequent) == ConditionalValidity.UNKNOWN) {
+                            set(consequent, requiredConsequentValue);
+                        } else if (value(consequent) != requiredConsequentValue) {
+                            set(antecedent, ConditionalValidity.INVALID);
+                            set(consequent, ConditionalValidity.INVALID);
+                        }
+                    }
+                    // MOTUS TOLENS: if consequent is known false (relative to expectation), enforce antecedent false.
+                    if (value(consequent) != ConditionalValidity.UNKNOWN && value(consequent) != requiredConsequentValue) {
+                        ConditionalValidity requiredAntecedentValue = isAntecNegated ? ConditionalValidity.TRUE : ConditionalValidity.FALSE;
+                        if (value(antecedent) == ConditionalValidity.UNKNOWN) {
+                            set(antecedent, requiredAntecedentValue);
+                        } else if (value(antecedent) != requiredAntecedentValue) {
+                            set(antecedent, ConditionalValidity.INVALID);
+                            set(consequent, ConditionalValidity.INVALID);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private final class Worklist extends Rules {
+        private final ConditionalValidity[] values;
+        private final boolean[] enabled;//null for all of them
+        private final int[] queue = new int[Math.max(count, 1)];
+        private final boolean[] queued = new boolean[count];
+        private int head, size;
+        int applied, conflicts;//for Metrics
+        // the implication graph, only kept when asked for: the predicate that gave every variable its TRUE/FALSE
+        // (-1 while it's UNKNOWN or if it came in with it), and the one that first had to make something INVALID
+        private final int[] reasons;
+        private int current = -1;
+        int conflict = -1;
+
+        Worklist(ConditionalValidity[] values, boolean[] enabled, boolean explain) {
+            this.values = values;
+            this.enabled = enabled;
+            if (explain) {
+                reasons = new int[values.length];
+                Arrays.fill(reasons, -1);
+            } else {
+                reasons = null;
+            }
+        }
+
+        void run() {
+            for (int p = 0; p < count; p++) enqueue(p);
+
+            // explaining only needs what led up to the first conflict
+            while (size > 0 && (reasons == null || conflict < 0)) {
+                int p = queue[head];
+                head = (head + 1) % queue.length;
+                size--;
+                queued[p] = false;
+                applied++;
+                current = p;
+                apply(kinds[p], first[p], firstNegated[p], second[p], secondNegated[p]);
+            }
+        }
+
+        // run() again from these values, over whatever is enabled by now
+        void rerun(ConditionalValidity[] start) {
+            System.arraycopy(start, 0, values, 0, start.length);
+            Arrays.fill(reasons, -1);
+            for (; size > 0; size--) {//left over when the last run stopped at its conflict
+                queued[queue[head]] = false;
+                head = (head + 1) % queue.length;
+            }
+            current = conflict = -1;
+            run();
+        }
+
+        private void enqueue(int p) {
+            if (queued[p] || (enabled != null && !enabled[p])) return;
+            queued[p] = true;
+            queue[(head + size) % queue.length] = p;
+            size++;
+        }
+
+        @Override
+        ConditionalValidity value(int variable) {
+            return values[variable];
+        }
+
+        @Override
+        void set(int variable, ConditionalValidity value) {
+            if (values[variable] == value) return;
+            if (value == ConditionalValidity.INVALID) conflicts++;
+            if (reasons != null) {
+                if (value != ConditionalValidity.INVALID) reasons[variable] = current;
+                else if (conflict < 0) conflict = current;
+            }
+            values[variable] = value;
+            for (int p : occurrences[variable]) enqueue(p);
+        }
+    }
+
+    /////////////////   CONFLICTS    /////////////////
+    /*
+     * which predicates make the values come out INVALID, as positions in the array the constructor got, sorted.
+     * empty if nothing goes INVALID. values are where propagate() would start from and aren't changed, whatever is
+     * already known in them counts as given.
+     *
+     * one propagate() that remembers why every variable got its value. the first predicate that had to make
+     * something INVALID, plus whatever set the variables it looked at, plus whatever set theirs, and so on, is already
+     * enough to get the INVALID again. that set is then cut down one predicate at a time: leave it out, propagate with only
+     * the rest of the set, and if something still goes INVALID it wasn't needed (and the set becomes what that run
+     * needed, which is often smaller still), otherwise it's put back. every run only looks at the set, never at all the
+     * predicates, and stops at its first conflict, so it costs about as much as the conflict is big (which adds up only
+     * when the conflict itself is a long chain, k predicates that are all needed take k runs over k).
+     * what comes out is minimal for these rules: without any one of its predicates nothing goes INVALID any more
+     * */
+    public int[] explain(ConditionalValidity[] values) {
+        Worklist worklist = new Worklist(values.clone(), null, true);
+        worklist.run();
+        if (worklist.conflict < 0) return new int[0];
+
+        boolean[] core = new boolean[count];
+        collectReasons(worklist, core);
+        Worklist without = new Worklist(values.clone(), core, true);//only ever runs what's still in core
+        for (int p = 0; p < count; p++) {
+            if (!core[p]) continue;
+            core[p] = false;
+            without.rerun(values);
+            if (without.conflict < 0) {
+                core[p] = true;//needed
+            } else {
+                Arrays.fill(core, false);
+                collectReasons(without, core);
+            }
+        }
+
+        int size = 0;
+        for (boolean in : core) if (in) size++;
+        int[] explanation = new int[size];
+        for (int p = 0, i = 0; p < count; p++) {
+            if (core[p]) explanation[i++] = sources[p];
+        }
+        Arrays.sort(explanation);
+        return explanation;
+    }
+
+    // the conflicting predicate and everything it depended on, walked back through the reasons
+    private void collectReasons(Worklist worklist, boolean[] core) {
+        int[] stack = new int[count];
+        int top = 0;
+        core[worklist.conflict] = true;
+        stack[top++] = worklist.conflict;
+        while (top > 0) {
+            int p = stack[--top];
+            int reason = worklist.reasons[first[p]];
+            if (reason >= 0 && !core[reason]) {
+                core[reason] = true;
+                stack[top++] = reason;
+            }
+            if (kinds[p] == ASSIGN) continue;
+            reason = worklist.reasons[second[p]];
+            if (reason >= 0 && !core[reason]) {
+                core[reason] = true;
+                stack[top++] = reason;
+            }
+        }
+    }
+
+    /*
+     * the predicates as clauses, for SatSolver. P>Q is (~P ? Q) and P=Q is (~P ? Q) & (P ? ~Q)
+     * */
+    public void encode(TseitinEncoder encoder, SatSolver solver) {
+        for (int p = 0; p < count; p++) {
+            int a = encoder.variable(first[p]);
+            if (firstNegated[p]) a = -a;
+            if (kinds[p] == ASSIGN) {
+                solver.addClause(a);
+                continue;
+            }
+            int b = encoder.variable(second[p]);
+            if (secondNegated[p]) b = -b;
+            solver.addClause(-a, b);
+            if (kinds[p] == IFF) solver.addClause(a, -b);
+        }
+    }
+
+    // the predicates as one diagram, all of them at once. variables are matched by name, see Bdd.build
+    public int encode(Bdd bdd) {
+        int all = Bdd.TRUE;
+        for (int p = 0; p < count; p++) {
+            int a = bdd.variable(symbols.name(first[p]));
+            if (firstNegated[p]) a = bdd.not(a);
+            if (kinds[p] == ASSIGN) {
+                all = bdd.and(all, a);
+                continue;
+            }
+            int b = bdd.variable(symbols.name(second[p]));
+            if (secondNegated[p]) b = bdd.not(b);
+            all = bdd.and(all, kinds[p] == IFF ? bdd.iff(a, b) : bdd.implies(a, b));
+        }
+        return all;
+    }
+
+    // value of "P" or "~P" given P's value
+    private static ConditionalValidity literal(ConditionalValidity value, boolean negated) {
+        return negated ? LogicTree.negate(value) : value;
+    }
+
+    /////////////////   PARSING    /////////////////
+    // one predicate, read. second and secondNegated are unused for ASSIGN
+    record Parsed(byte kind, int first, boolean firstNegated, int second, boolean secondNegated) {}
+
+    // fills slot p, false for anything it can't read
+    private boolean parse(String predicate, int p) {
+        Parsed parsed = parse(predicate, symbols);
+        if (parsed == null) return false;
+        kinds[p] = parsed.kind;
+        first[p] = parsed.first;
+        firstNegated[p] = parsed.firstNegated;
+        second[p] = parsed.second;
+        secondNegated[p] = parsed.secondNegated;
+        mention(first[p]);
+        if (kinds[p] != ASSIGN) mention(second[p]);
+        return true;
+    }
+
+    /*
+     * one predicate on its own, for anything that applies the Rules itself. null if it can't be read (nothing is
+     * printed, see invalid()), the variables it named before that are interned all the same
+     * */
+    static Parsed parse(String predicate, SymbolTable symbols) {
+        String formattedPredicate = stripWhitespace(predicate).toUpperCase();
+        if (formattedPredicate.isEmpty()) return null;
+
+        int iff = formattedPredicate.indexOf('=');
+        int implies = formattedPredicate.indexOf('>');
+        byte kind;
+        int split;
+        if (iff >= 0 && implies < 0) {
+            kind = IFF;
+            split = iff;
+        } else if (implies >= 0) {
+            kind = IMPLIES;
+            split = implies;
+        } else {
+            kind = ASSIGN;
+            split = -1;
+        }
+
+        String firstToken = split < 0 ? formattedPredicate : formattedPredicate.substring(0, split);
+        int firstId = readLiteral(firstToken, symbols);
+        int secondId = -1;
+        String secondToken = null;
+        if (firstId >= 0 && split >= 0) {
+            secondToken = formattedPredicate.substring(split + 1);
+            secondId = readLiteral(secondToken, symbols);
+        }
+        if (firstId < 0 || (split >= 0 && secondId < 0)) return null;
+        return new Parsed(kind, firstId, firstToken.startsWith("~"), secondId, secondToken != null && secondToken.startsWith("~"));
+    }
+
+    // what's wrong with a predicate parse() gave back null for
+    static String invalid(String predicate) {
+        boolean iff = predicate.indexOf('=') >= 0, implies = predicate.indexOf('>') >= 0;
+        String kind = iff && !implies ? "iff" : implies ? "if-then" : "assignment";
+        return "Invalid " + kind + " predicate: " + predicate;
+    }
+
+    private void mention(int variable) {
+        if (variable >= mentioned.length) mentioned = Arrays.copyOf(mentioned, Math.max(variable + 1, mentioned.length * 2));
+        mentioned[variable] = true;
+    }
+
+    // "P" or "~P", P being any variable name ExpressionParser accepts. P's id, -1 if it isn't one
+    private static int readLiteral(String token, SymbolTable symbols) {
+        String name = token.startsWith("~") ? token.substring(1) : token;
+        if (name.isEmpty() || !Character.isLetter(name.charAt(0))) return -1;
+        for (int i = 1; i < name.length(); i++) {
+            if (!ExpressionParser.isNamePart(name.charAt(i))) return -1;
+        }
+        return symbols.intern(name);
+    }
+
+    //replaceAll("\\s", "") compiles a regex on every call
+    static String stripWhitespace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isWhitespace(c)) sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * A file of precompiled rules that a service can map and evaluate straight away, instead of parsing every one at startup.
+ *
+ * open() maps the file and checks the header, that's all, rules are read out of the mapped buffer when they're evaluated
+ * and nothing is allocated per rule or per node (the stack is per thread, like CompiledExpression's).
+ *
+ *      try (RuleCatalog.Writer writer = RuleCatalog.writer(path)) {
+ *          writer.add("rule-17", new LogicTree("P & ~(S ? Q)", "P", "Q > ~P"));
+ *      }
+ *      RuleCatalog catalog = RuleCatalog.open(path);
+ *      catalog.evaluate(0);                        //with the values the predicates settled on
+ *      catalog.evaluateCode(0, assignment);        //or the caller's, by the rule's own variable ids
+ *
+ * format, version 1, big endian:
+ *      header      "LTC1", version (int), rule count (int), deepest stack (int), offset of the index (int)
+ *      rules       one after another, each:
+ *                      name (unsigned short length + UTF-8)
+ *                      variable count (unsigned short), the settled values, one ConditionalValidity ordinal per variable
+ *                      program length in bytes (int), the CompiledExpression program in postorder, one byte per
+ *                      instruction: 0 NOT, 1 AND, 2 OR, 3 + id PUSH for variable ids below 252, 255 then an int id
+ *                      for the rest (-1 pushes UNKNOWN)
+ *                      the variable names in id order (unsigned byte length + UTF-8 each), last since evaluating never needs them
+ *      index       the offset of every rule (int each)
+ * a single mapped buffer, so a catalogue can be up to 2GB.
+ * */
+public final class RuleCatalog {
+    static final int MAGIC = 0x4C544331;//"LTC1"
+    static final int VERSION = 1;
+    private static final int HEADER = 20;
+    private static final int NOT = 0, AND = 1, OR = 2, PUSH = 3, PUSH_WIDE = 255;
+
+    private final ByteBuffer buffer;
+    private final int ruleCount;
+    private final int index;
+    private final ThreadLocal<byte[]> stacks;
+
+    private RuleCatalog(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) throw new IOException("Not a rule catalogue");
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported rule catalogue version " + buffer.getInt(4));
+        ruleCount = buffer.getInt(8);
+        int maxStack = Math.max(1, buffer.getInt(12));
+        index = buffer.getInt(16);
+        if (index < HEADER || (long) index + 4L * ruleCount > buffer.limit()) throw new IOException("Truncated rule catalogue");
+        stacks = ThreadLocal.withInitial(() -> new byte[maxStack]);
+    }
+
+    public static RuleCatalog open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Rule catalogue over 2GB");
+            //the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RuleCatalog(mapped);
+        }
+    }
+    // same thing over bytes that are already in memory
+    public static RuleCatalog wrap(ByteBuffer buffer) throws IOException {
+        return new RuleCatalog(buffer.duplicate());
+    }
+
+    public int size() {
+        return ruleCount;
+    }
+
+    /////////////////   READING RULES    /////////////////
+    private int offset(int rule) {
+        if (rule < 0 || rule >= ruleCount) throw new IndexOutOfBoundsException("Rule " + rule + " of " + ruleCount);
+        return buffer.getInt(index + 4 * rule);
+    }
+    private int variablesAt(int offset) {
+        return offset + 2 + Short.toUnsignedInt(buffer.getShort(offset));
+    }
+    // where the program length is, variables at the offset of the variable count
+    private int programAt(int variables) {
+        return variables + 2 + Short.toUnsignedInt(buffer.getShort(variables));
+    }
+
+    public String name(int rule) {
+        int offset = offset(rule);
+        return string(offset + 2, Short.toUnsignedInt(buffer.getShort(offset)));
+    }
+    public int variableCount(int rule) {
+        return Short.toUnsignedInt(buffer.getShort(variablesAt(offset(rule))));
+    }
+    public String variableName(int rule, int id) {
+        int variables = variablesAt(offset(rule));
+        if (id < 0 || id >= Short.toUnsignedInt(buffer.getShort(variables))) throw new IndexOutOfBoundsException("Variable " + id);
+        int program = programAt(variables);
+        int at = program + 4 + buffer.getInt(program);
+        for (int i = 0; i < id; i++) at += 1 + Byte.toUnsignedInt(buffer.get(at));
+        return string(at + 1, Byte.toUnsignedInt(buffer.get(at)));
+    }
+    // what the predicates settled on, in the format evaluateCode takes
+    public byte[] getAssignment(int rule) {
+        int variables = variablesAt(offset(rule));
+        byte[] assignment = new byte[Short.toUnsignedInt(buffer.getShort(variables))];
+        buffer.get(variables + 2, assignment);
+        return assignment;
+    }
+
+    private String string(int at, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(at, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /////////////////   EVALUATING    /////////////////
+    public ConditionalValidity evaluate(int rule) {
+        return CompiledExpression.VALUES[evaluateCode(rule, null)];
+    }
+    public ConditionalValidity evaluate(int rule, byte[] assignment) {
+        return CompiledExpression.VALUES[evaluateCode(rule, assignment)];
+    }
+
+    /*
+     * assignment[id] is a ConditionalValidity ordinal for the rule's variable id, null means the settled values.
+     * runs the program straight out of the buffer, same lookup tables as CompiledExpression
+     * */
+    public byte evaluateCode(int rule, byte[] assignment) {
+        int variables = variablesAt(offset(rule));
+        int settled = variables + 2;
+        int at = programAt(variables);
+        int end = at + 4 + buffer.getInt(at);
+        at += 4;
+        if (at == end) return CompiledExpression.UNKNOWN;
+
+        byte[] stack = stacks.get();
+        int top = -1;
+        while (at < end) {
+            int code = Byte.toUnsignedInt(buffer.get(at++));
+            switch (code) {
+                case NOT -> stack[top] = CompiledExpression.NOT_TABLE[stack[top]];
+                case AND -> {
+                    top--;
+                    stack[top] = CompiledExpression.AND_TABLE[stack[top] * 4 + stack[top + 1]];
+                }
+                case OR -> {
+                    top--;
+                    stack[top] = CompiledExpression.OR_TABLE[stack[top] * 4 + stack[top + 1]];
+                }
+                default -> {
+                    int var = code - PUSH;
+                    if (code == PUSH_WIDE) {
+                        var = buffer.getInt(at);
+                        at += 4;
+                    }
+                    stack[++top] = var < 0 ? CompiledExpression.UNKNOWN
+                            : assignment != null ? assignment[var] : buffer.get(settled + var);
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    /////////////////   WRITING    /////////////////
+    public static Writer writer(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    /*
+     * streams the rules out as they're added, only their offsets are kept until close() writes the index and the header
+     * */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final DataOutputStream out;//size() is where the next byte goes, after the header
+        private int[] offsets = new int[1024];
+        private int count, maxStack;
+
+        private Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            channel.position(HEADER);
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        }
+
+        public Writer add(String name, LogicTree tree) throws IOException {
+            return add(name, tree.compile(), tree.getSymbols(), tree.getAssignment());
+        }
+
+        /*
+         * everything that could be refused is checked before the first byte goes out, so a rule that throws leaves
+         * nothing behind and the catalogue stays whole
+         * */
+        Writer add(String name, CompiledExpression program, SymbolTable symbols, byte[] settled) throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 0xFFFF) throw new IOException("Rule name over 65535 bytes: " + name.substring(0, 32) + "...");
+            if (symbols.size() > 0xFFFF) throw new IOException("Too many variables in " + name);
+            byte[][] variables = new byte[symbols.size()][];
+            long recordBytes = 2 + nameBytes.length + 2 + variables.length + 4;
+            for (int id = 0; id < variables.length; id++) {
+                variables[id] = symbols.name(id).getBytes(StandardCharsets.UTF_8);
+                if (variables[id].length > 0xFF) throw new IOException("Variable name too long: " + symbols.name(id));
+                recordBytes += 1 + variables[id].length;
+            }
+            int programBytes = 0;
+            for (int i = 0; i < program.length(); i++) {
+                int var = program.operand(i);
+                programBytes += program.op(i) != CompiledExpression.PUSH || (var >= 0 && var < PUSH_WIDE - PUSH) ? 1 : 5;
+            }
+            recordBytes += programBytes;
+            //size() stops counting at Integer.MAX_VALUE, so this has to be known before writing
+            if (HEADER + (long) out.size() + recordBytes > Integer.MAX_VALUE) throw new IOException("Rule catalogue over 2GB");
+            if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = HEADER + out.size();
+
+            out.writeShort(nameBytes.length);
+            out.write(nameBytes);
+            out.writeShort(variables.length);
+            for (int id = 0; id < variables.length; id++) out.writeByte(id < settled.length ? settled[id] : CompiledExpression.UNKNOWN);
+
+            out.writeInt(programBytes);
+            for (int i = 0; i < program.length(); i++) {
+                switch (program.op(i)) {
+                    case CompiledExpression.NOT -> out.writeByte(NOT);
+                    case CompiledExpression.AND -> out.writeByte(AND);
+                    case CompiledExpression.OR -> out.writeByte(OR);
+                    default -> {
+                        int var = program.operand(i);
+                        if (var >= 0 && var < PUSH_WIDE - PUSH) {
+                            out.writeByte(PUSH + var);
+                        } else {
+                            out.writeByte(PUSH_WIDE);
+                            out.writeInt(var);
+                        }
+                    }
+                }
+            }
+
+            for (byte[] variable : variables) {
+                out.writeByte(variable.length);
+                out.write(variable);
+            }
+            maxStack = Math.max(maxStack, program.maxStack());
+            return this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                long index = HEADER + (long) out.size();
+                if (index + 4L * count > Integer.MAX_VALUE) throw new IOException("Rule catalogue over 2GB");
+                for (int i = 0; i < count; i++) out.writeInt(offsets[i]);
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(maxStack).putInt((int) index).flip();
+                channel.write(header, 0);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Small conflict driven clause learning SAT solver, so satisfiability and validity questions don't need the 2^n
+ * truth table.
+ *
+ * Variables are 1..n and clauses are written DIMACS style, 3 means variable 3 and -3 means NOT variable 3.
+ * Inside, literal = 2 * (variable - 1) + (negated ? 1 : 0), so flipping the last bit negates it.
+ *
+ *  - two watched literals per clause, so propagation only looks at clauses whose watch just became false
+ *  - conflicts are analysed back to the first unique implication point, the learnt clause is added and the search
+ *    jumps back to the second highest level in it
+ *  - VSIDS: variables in conflicts get their activity bumped, the bump grows every conflict so old activity decays,
+ *    decisions take the most active unassigned variable (binary heap) with its last used polarity
+ *  - restarts follow the Luby sequence
+ * */
+public class SatSolver {
+    private static final int RESTART_BASE = 100;
+    private static final double DECAY = 0.95;
+
+    private int variableCount;
+    private final List<int[]> clauses = new ArrayList<>();
+    private IntVec[] watches = new IntVec[0];
+    private boolean unsatisfiable;
+
+    // per variable
+    private byte[] values = new byte[0];//0 unassigned, 1 true, -1 false
+    private int[] levels = new int[0];
+    private int[] reasons = new int[0];//clause index, -1 for decisions
+    private boolean[] phases = new boolean[0];
+    private double[] activity = new double[0];
+    private double bump = 1;
+    private boolean[] seen = new boolean[0];
+
+    private int[] trail = new int[0];
+    private int trailSize, propagated;
+    private final IntVec levelStarts = new IntVec();
+
+    // heap of variables ordered by activity
+    private int[] heap = new int[0];
+    private int[] heapIndex = new int[0];//-1 when not in the heap
+    private int heapSize;
+
+    private boolean[] model;
+    private long conflicts;
+
+    public int newVariable() {
+        int v = variableCount++;
+        if (v == values.length) grow(Math.max(16, v * 2));
+        watches[2 * v] = new IntVec();
+        watches[2 * v + 1] = new IntVec();
+        reasons[v] = -1;
+        heapIndex[v] = -1;
+        heapInsert(v);
+        return v + 1;
+    }
+    public int variableCount() {
+        return variableCount;
+    }
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    // DIMACS style literals, must only be called before solve()
+    public void addClause(int... dimacs) {
+        if (unsatisfiable) return;
+        int[] lits = new int[dimacs.length];
+        int size = 0;
+        for (int d : dimacs) {
+            int lit = toLiteral(d);
+            if (value(lit) == 1) return;//already satisfied at level 0
+            if (value(lit) == -1) continue;
+            boolean duplicate = false;
+            for (int i = 0; i < size; i++) {
+                if (lits[i] == lit) duplicate = true;
+                if (lits[i] == (lit ^ 1)) return;//always true
+            }
+            if (!duplicate) lits[size++] = lit;
+        }
+        if (size == 0) {
+            unsatisfiable = true;
+        } else if (size == 1) {
+            enqueue(lits[0], -1);
+            if (propagate() != -1) unsatisfiable = true;
+        } else {
+            attach(Arrays.copyOf(lits, size));
+        }
+    }
+
+    /*
+     * true and a model when satisfiable, false when it isn't
+     * */
+    public boolean solve() {
+        model = null;
+        if (unsatisfiable) return false;
+        if (propagate() != -1) {
+            unsatisfiable = true;
+            return false;
+        }
+        for (int restart = 0; ; restart++) {
+            int result = search(RESTART_BASE * luby(restart));
+            if (result == 1) {
+                model = new boolean[variableCount];
+                for (int v = 0; v < variableCount; v++) model[v] = values[v] == 1;
+                backtrack(0);
+                return true;
+            }
+            if (result == -1) {
+                unsatisfiable = true;
+                return false;
+            }
+            backtrack(0);//restart
+        }
+    }
+    // value of a variable in the last model
+    public boolean modelValue(int variable) {
+        return model[variable - 1];
+    }
+
+    /////////////////   SEARCH    /////////////////
+    // 1 satisfiable, -1 unsatisfiable, 0 ran out of conflicts for this restart
+    private int search(long conflictBudget) {
+        long conflictsHere = 0;
+        while (true) {
+            int conflict = propagate();
+            if (conflict != -1) {
+                conflicts++;
+                conflictsHere++;
+                if (decisionLevel() == 0) return -1;
+                int[] learnt = analyze(conflict);
+                backtrack(backjumpLevel(learnt));
+                if (learnt.length == 1) {
+                    enqueue(learnt[0], -1);
+                } else {
+                    enqueue(learnt[0], attach(learnt));
+                }
+                bump /= DECAY;
+            } else {
+                if (conflictsHere >= conflictBudget) return 0;
+                int v = pickBranchVariable();
+                if (v < 0) return 1;
+                levelStarts.push(trailSize);
+                enqueue(2 * v + (phases[v] ? 0 : 1), -1);
+            }
+        }
+    }
+
+    // returns a conflicting clause or -1
+    private int propagate() {
+        while (propagated < trailSize) {
+            int falseLit = trail[propagated++] ^ 1;
+            IntVec watching = watches[falseLit];
+            int i = 0, j = 0;
+            while (i < watching.size) {
+                int index = watching.data[i++];
+                int[] c = clauses.get(index);
+                if (c[0] == falseLit) {
+                    c[0] = c[1];
+                    c[1] = falseLit;
+                }
+                if (value(c[0]) == 1) {
+                    watching.data[j++] = index;
+                    continue;
+                }
+                // look for a new literal to watch
+                boolean moved = false;
+                for (int k = 2; k < c.length; k++) {
+                    if (value(c[k]) != -1) {
+                        c[1] = c[k];
+                        c[k] = falseLit;
+                        watches[c[1]].push(index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) continue;
+
+                watching.data[j++] = index;
+                if (value(c[0]) == -1) {
+                    while (i < watching.size) watching.data[j++] = watching.data[i++];
+                    watching.size = j;
+                    return index;
+                }
+                enqueue(c[0], index);
+            }
+            watching.size = j;
+        }
+        return -1;
+    }
+
+    // first unique implication point, learnt[0] is the literal that becomes true after the backjump
+    private int[] analyze(int conflict) {
+        IntVec learnt = new IntVec();
+        learnt.push(0);//placeholder for the asserting literal
+        int pathCount = 0;
+        int p = -1;
+        int index = trailSize - 1;
+        int clause = conflict;
+        do {
+            int[] c = clauses.get(clause);
+            for (int k = (p == -1 ? 0 : 1); k < c.length; k++) {
+                int v = c[k] >> 1;
+                if (!seen[v] && levels[v] > 0) {
+                    seen[v] = true;
+                    bumpActivity(v);
+                    if (levels[v] >= decisionLevel()) pathCount++;
+                    else learnt.push(c[k]);
+                }
+            }
+            while (!seen[trail[index] >> 1]) index--;
+            p = trail[index--];
+            clause = reasons[p >> 1];
+            seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt.data[0] = p ^ 1;
+
+        for (int k = 1; k < learnt.size; k++) seen[learnt.data[k] >> 1] = false;
+        // the second watch has to be the literal from the highest remaining level
+        int best = 1;
+        for (int k = 2; k < learnt.size; k++) {
+            if (levels[learnt.data[k] >> 1] > levels[learnt.data[best] >> 1]) best = k;
+        }
+        if (learnt.size > 1) {
+            int swap = learnt.data[1];
+            learnt.data[1] = learnt.data[best];
+            learnt.data[best] = swap;
+        }
+        return Arrays.copyOf(learnt.data, learnt.size);
+    }
+    private int backjumpLevel(int[] learnt) {
+        return learnt.length == 1 ? 0 : levels[learnt[1] >> 1];
+    }
+
+    private void backtrack(int level) {
+        if (decisionLevel() <= level) return;
+        int start = levelStarts.data[level];
+        for (int i = trailSize - 1; i >= start; i--) {
+            int v = trail[i] >> 1;
+            phases[v] = values[v] == 1;
+            values[v] = 0;
+            reasons[v] = -1;
+            if (heapIndex[v] < 0) heapInsert(v);
+        }
+        trailSize = propagated = start;
+        levelStarts.size = level;
+    }
+
+    private int pickBranchVariable() {
+        while (heapSize > 0) {
+            int v = heapRemoveTop();
+            if (values[v] == 0) return v;
+        }
+        return -1;
+    }
+
+    /////////////////   HELPERS    /////////////////
+    private int decisionLevel() {
+        return levelStarts.size;
+    }
+    private static int toLiteral(int dimacs) {
+        return dimacs > 0 ? 2 * (dimacs - 1) : 2 * (-dimacs - 1) + 1;
+    }
+    // 1 true, -1 false, 0 unassigned
+    private int value(int lit) {
+        int v = values[lit >> 1];
+        return (lit & 1) == 0 ? v : -v;
+    }
+    private void enqueue(int lit, int reason) {
+        int v = lit >> 1;
+        values[v] = (byte) ((lit & 1) == 0 ? 1 : -1);
+        levels[v] = decisionLevel();
+        reasons[v] = reason;
+        trail[trailSize++] = lit;
+    }
+    private int attach(int[] c) {
+        int index = clauses.size();
+        clauses.add(c);
+        watches[c[0]].push(index);
+        watches[c[1]].push(index);
+        return index;
+    }
+
+    private void bumpActivity(int v) {
+        activity[v] += bump;
+        if (activity[v] > 1e100) {
+            for (int i = 0; i < variableCount; i++) activity[i] *= 1e-100;
+            bump *= 1e-100;
+        }
+        if (heapIndex[v] >= 0) heapUp(heapIndex[v]);
+    }
+
+    // 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ... for i = 0, 1, 2, ...
+    private static long luby(int i) {
+        int size = 1, power = 0;
+        while (size < i + 1) {
+            power++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            power--;
+            i = i % size;
+        }
+        return 1L << power;
+    }
+
+    private void grow(int capacity) {
+        watches = Arrays.copyOf(watches, 2 * capacity);
+        values = Arrays.copyOf(values, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        reasons = Arrays.copyOf(reasons, capacity);
+        phases = Arrays.copyOf(phases, capacity);
+        activity = Arrays.copyOf(activity, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+        trail = Arrays.copyOf(trail, capacity);
+        heap = Arrays.copyOf(heap, capacity);
+        heapIndex = Arrays.copyOf(heapIndex, capacity);
+    }
+
+    /////////////////   ACTIVITY HEAP    /////////////////
+    private void heapInsert(int v) {
+        heap[heapSize] = v;
+        heapIndex[v] = heapSize;
+        heapUp(heapSize++);
+    }
+    private int heapRemoveTop() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            heapDown(0);
+        }
+        return top;
+    }
+    private void heapUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[v]) break;
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+    private void heapDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) child++;
+            if (activity[heap[child]] <= activity[v]) break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapIndex[v] = i;
+    }
+
+    // growable int list, avoids boxing in the watch lists
+    private static final class IntVec {
+        int[] data = new int[4];
+        int size;
+
+        void push(int x) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = x;
+        }
+    }
+}
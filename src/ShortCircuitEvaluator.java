@@ -0,0 +1,229 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * Evaluates a tree and stops as soon as the answer can't change: an & is done at its first FALSE, an ? at its first TRUE.
+ * Those are the only values that decide and()/or() no matter what the rest is (INVALID and UNKNOWN don't, an INVALID
+ * & can still turn FALSE), so the INVALID/UNKNOWN precedence comes out exactly as evaluateNode's.
+ *
+ * runs of the same operator are flattened (A&(B&(C&D)) is one & over A, B, C, D), and since and()/or() don't care about
+ * order, their operands can be tried in whatever order is cheapest. every operand keeps count of how often it's been
+ * evaluated, how often it decided its parent and how many nodes that took, and every REORDER_INTERVAL evaluations each
+ * run is sorted by cost / chance of deciding (smoothed, and the subtree size until something has been counted), so the
+ * cheap leaves that usually settle the record are tried first.
+ *
+ * nothing is written into the tree, values live on the evaluator's own stack. not thread safe (the counters change on
+ * every call), make one per thread with LogicTree.shortCircuit().
+ * */
+public final class ShortCircuitEvaluator {
+    static final int REORDER_INTERVAL = 1024;
+    private static final byte VAR = 0, NOT = 1, AND = 2, OR = 3;
+
+    private final byte[] ops;
+    private final int[] variables;          //VAR: variable id, -1 for an operator that didn't parse (always UNKNOWN)
+    private final int[] first, count;       //NOT, AND, OR: where their operands are in children, and how many
+    private final int[] children;
+    private final int[] size;               //nodes in the subtree, the cost before anything has been counted
+    private final byte[] settled;
+
+    private final long[] evaluated, decided, cost;
+    private long visited, evaluations;
+
+    // frames of the walk, grown when a deeper tree needs it
+    private int[] frameNode = new int[16], framePosition = new int[16];
+    private long[] frameStart = new long[16];
+    private byte[] frameValue = new byte[16];
+
+    ShortCircuitEvaluator(Node root, byte[] settled) {
+        this.settled = settled.clone();
+        List<Node> nodes = new ArrayList<>();
+        List<int[]> operands = new ArrayList<>();
+        if (root != null) nodes.add(root);
+
+        // ids in the order they're found, every operand after its parent. runs of the same operator are walked down
+        // with a stack of their own so A&(B&(C&D)) gives A, B, C, D in order
+        Deque<Node> run = new ArrayDeque<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            Node node = nodes.get(id);
+            if (node.isVariable() || (node.value != '~' && node.value != '&' && node.value != '?')) {
+                operands.add(new int[0]);
+            } else if (node.value == '~') {
+                operands.add(new int[]{nodes.size()});
+                nodes.add(node.left);
+            } else {
+                List<Node> flat = new ArrayList<>();
+                run.push(node.right);
+                run.push(node.left);
+                while (!run.isEmpty()) {
+                    Node next = run.pop();
+                    if (!next.isVariable() && next.value == node.value) {
+                        run.push(next.right);
+                        run.push(next.left);
+                    } else {
+                        flat.add(next);
+                    }
+                }
+                int[] ids = new int[flat.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = nodes.size();
+                    nodes.add(flat.get(i));
+                }
+                operands.add(ids);
+            }
+        }
+
+        int n = nodes.size();
+        ops = new byte[n];
+        variables = new int[n];
+        first = new int[n];
+        count = new int[n];
+        size = new int[n];
+        int total = 0;
+        for (int[] ids : operands) total += ids.length;
+        children = new int[total];
+        for (int id = 0, at = 0; id < n; id++) {
+            Node node = nodes.get(id);
+            variables[id] = -1;
+            if (node.isVariable()) {
+                ops[id] = VAR;
+                variables[id] = node.symbol;
+            } else if (node.value == '~') {
+                ops[id] = NOT;
+            } else if (node.value == '&' || node.value == '?') {
+                ops[id] = node.value == '&' ? AND : OR;
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                ops[id] = VAR;
+            }
+            int[] ids = operands.get(id);
+            first[id] = at;
+            count[id] = ids.length;
+            System.arraycopy(ids, 0, children, at, ids.length);
+            at += ids.length;
+        }
+        for (int id = n - 1; id >= 0; id--) {
+            size[id] = 1;
+            for (int i = 0; i < count[id]; i++) size[id] += size[children[first[id] + i]];
+        }
+        evaluated = new long[n];
+        decided = new long[n];
+        cost = new long[n];
+    }
+
+    public int nodeCount() {
+        return ops.length;
+    }
+    // nodes actually looked at over every evaluate() so far, compare with nodeCount() * evaluations()
+    public long nodesVisited() {
+        return visited;
+    }
+    public long evaluations() {
+        return evaluations;
+    }
+
+    // with the values the predicates settled on
+    public ConditionalValidity evaluate() {
+        return CompiledExpression.VALUES[evaluateCode(settled)];
+    }
+    public ConditionalValidity evaluate(byte[] assignment) {
+        return CompiledExpression.VALUES[evaluateCode(assignment)];
+    }
+
+    /*
+     * assignment[id] is a ConditionalValidity ordinal, as for CompiledExpression.
+     * a frame per node being worked on, holding which operand is next and the value so far; when an operand comes
+     * back with its parent's deciding value the parent is done without looking at the rest
+     * */
+    public byte evaluateCode(byte[] assignment) {
+        if (ops.length == 0) return CompiledExpression.UNKNOWN;
+        if (++evaluations % REORDER_INTERVAL == 0) reorder();
+
+        int top = 0;
+        enter(0, 0);
+        byte value = 0;
+        boolean returning = false;
+        while (true) {
+            int node = frameNode[top];
+            byte op = ops[node];
+            byte result;
+            if (op == VAR) {
+                int variable = variables[node];
+                result = variable < 0 ? CompiledExpression.UNKNOWN : assignment[variable];
+            } else if (op == NOT) {
+                if (!returning) {
+                    enter(++top, children[first[node]]);
+                    continue;
+                }
+                result = CompiledExpression.NOT_TABLE[value];
+            } else {
+                byte deciding = op == AND ? CompiledExpression.FALSE : CompiledExpression.TRUE;
+                if (returning) {
+                    int child = children[first[node] + framePosition[top] - 1];
+                    evaluated[child]++;
+                    cost[child] += visited - frameStart[top + 1] + 1;
+                    if (value == deciding) decided[child]++;
+                    frameValue[top] = op == AND
+                            ? CompiledExpression.AND_TABLE[frameValue[top] * 4 + value]
+                            : CompiledExpression.OR_TABLE[frameValue[top] * 4 + value];
+                }
+                if (frameValue[top] != deciding && framePosition[top] < count[node]) {
+                    int child = children[first[node] + framePosition[top]++];
+                    enter(++top, child);
+                    returning = false;
+                    continue;
+                }
+                result = frameValue[top];
+            }
+
+            if (top == 0) return result;
+            top--;
+            value = result;
+            returning = true;
+        }
+    }
+
+    private void enter(int frame, int node) {
+        if (frame == frameNode.length) {
+            int length = frame * 2;
+            frameNode = Arrays.copyOf(frameNode, length);
+            framePosition = Arrays.copyOf(framePosition, length);
+            frameStart = Arrays.copyOf(frameStart, length);
+            frameValue = Arrays.copyOf(frameValue, length);
+        }
+        visited++;
+        frameNode[frame] = node;
+        framePosition[frame] = 0;
+        frameStart[frame] = visited;
+        // the identity, so the first operand's value comes through and() / or() unchanged
+        frameValue[frame] = ops[node] == OR ? CompiledExpression.FALSE : CompiledExpression.TRUE;
+    }
+
+    /*
+     * sorts every run by expected nodes visited / chance of deciding it, lowest first.
+     * an insertion sort, runs are short and mostly in order already after the first time
+     * */
+    public void reorder() {
+        double[] score = new double[ops.length];
+        for (int node = 0; node < ops.length; node++) {
+            double averageCost = evaluated[node] == 0 ? size[node] : (double) cost[node] / evaluated[node];
+            double chance = (decided[node] + 1.0) / (evaluated[node] + 2.0);
+            score[node] = averageCost / chance;
+        }
+        for (int node = 0; node < ops.length; node++) {
+            if (ops[node] != AND && ops[node] != OR) continue;
+            int from = first[node], to = first[node] + count[node];
+            for (int i = from + 1; i < to; i++) {
+                int child = children[i];
+                int j = i - 1;
+                while (j >= from && score[children[j]] > score[child]) {
+                    children[j + 1] = children[j];
+                    j--;
+                }
+                children[j + 1] = child;
+            }
+        }
+    }
+}
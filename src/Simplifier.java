@@ -0,0 +1,250 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Folds what the predicates already decided out of a tree, leaving the part that still depends on the unknown variables.
+ *
+ *      known TRUE/FALSE variables      become constants
+ *      ~~X                             X
+ *      X&TRUE, X?FALSE                 X          (identities)
+ *      X&FALSE, X?TRUE                 the constant (annihilators)
+ *      X&X, X?X                        X
+ *      A&(B&C)                         one n-ary & over A, B, C, same for ?
+ * every one of these holds for all four values, and(), or() and negate() are associative, commutative and idempotent
+ * and TRUE/FALSE are their identity and absorbing values, so the residual gives the same answer as the original under
+ * any assignment of the variables that are left. Nothing that only holds for two values is done (X&~X is not FALSE
+ * when X is UNKNOWN). INVALID variables are kept, they're still needed to get INVALID out.
+ *
+ * n-ary nodes only live in here, the result is made of ordinary binary Nodes again (right associative like the parser),
+ * reusing the tree's own variable nodes. If the whole thing folds to a constant the result is a known variable that has
+ * that value, or the NOT of one, so it's still an ordinary tree that evaluates to the right thing.
+ *
+ * children first with explicit stacks all the way, and runs of the same operator are merged smaller into larger,
+ * so a long A&(B&(C&...)) chain is flattened in about n log n instead of copying the list at every level.
+ * */
+public class Simplifier {
+    private static final char VAR = 'v', CONSTANT = 'c';
+
+    private static final class Term {
+        final char op;                  //VAR, CONSTANT, '~', '&' or '?'
+        Node leaf;                      //VAR: the variable node, CONSTANT: a node that evaluates to the constant
+        ConditionalValidity constant;
+        Term operand;                   //'~'
+        ArrayDeque<Term> operands;      //'&' and '?', already finished, not deduplicated until this one is finished
+        int id = -1;                    //structural id once finished, equal ids are equal expressions
+        Term finished;
+        Node emitted;
+
+        Term(char op) {
+            this.op = op;
+        }
+    }
+
+    private final NodeFactory factory;
+    private final Map<List<Integer>, Integer> ids = new HashMap<>();
+
+    public Simplifier() {
+        this(new NodeFactory());
+    }
+    public Simplifier(NodeFactory factory) {
+        this.factory = factory;
+    }
+
+    public Node simplify(Node root) {
+        if (root == null) return null;
+        List<Node> order = Node.postorder(root);
+
+        // how many parents every node has, a run of & (or ?) can only be merged in place when nobody else is looking at it
+        Map<Node, Integer> parents = new IdentityHashMap<>();
+        for (Node node : order) {
+            if (node.left != null) parents.merge(node.left, 1, Integer::sum);
+            if (node.right != null) parents.merge(node.right, 1, Integer::sum);
+        }
+
+        Map<Node, Term> terms = new IdentityHashMap<>();
+        for (Node node : order) {
+            Term term;
+            if (node.isVariable()) {
+                term = variable(node);
+            } else if (node.value == '~') {
+                term = not(finish(terms.get(node.left)));
+            } else if (node.value == '&' || node.value == '?') {
+                term = nary(node.value, terms.get(node.left), parents.get(node.left) == 1,
+                        terms.get(node.right), parents.get(node.right) == 1);
+            } else {
+                System.out.println("Error: Unknown operator " + node.value);
+                return root;
+            }
+            terms.put(node, term);
+        }
+        return emit(finish(terms.get(root)));
+    }
+
+    /////////////////   FOLDING    /////////////////
+    private Term variable(Node node) {
+        ConditionalValidity value = node.validity.value;
+        if (value == ConditionalValidity.TRUE || value == ConditionalValidity.FALSE) return constant(value, node);
+        Term term = new Term(VAR);
+        term.leaf = node;
+        term.id = id(VAR, node.symbol);
+        term.finished = term;
+        return term;
+    }
+
+    private Term constant(ConditionalValidity value, Node witness) {
+        Term term = new Term(CONSTANT);
+        term.constant = value;
+        term.leaf = witness;
+        term.finished = term;
+        return term;
+    }
+
+    private Term not(Term child) {
+        if (child.op == CONSTANT) {
+            // ~(~A) is A again, anything else gets a NOT
+            Node witness = child.leaf.value == '~' && !child.leaf.isVariable() ? child.leaf.left : factory.operator('~', child.leaf, null);
+            return constant(LogicTree.negate(child.constant), witness);
+        }
+        if (child.op == '~') return child.operand;
+        Term term = new Term('~');
+        term.operand = child;
+        term.id = id('~', child.id);
+        term.finished = term;
+        return term;
+    }
+
+    /*
+     * left op right, where either side that is an unfinished run of the same operator with no other parent
+     * gets its operands taken over (the smaller run is moved into the larger one, order kept: left's then right's)
+     * */
+    private Term nary(char op, Term left, boolean leftOwned, Term right, boolean rightOwned) {
+        ConditionalValidity identity = op == '&' ? ConditionalValidity.TRUE : ConditionalValidity.FALSE;
+
+        boolean mergeLeft = leftOwned && left.op == op && left.finished == null;
+        boolean mergeRight = rightOwned && right.op == op && right.finished == null;
+        if (!mergeLeft) left = finish(left);
+        if (!mergeRight) right = finish(right);
+
+        // constants: the absorbing one decides everything, the identity just drops out
+        if (left.op == CONSTANT && left.constant != identity) return left;
+        if (right.op == CONSTANT && right.constant != identity) return right;
+        if (left.op == CONSTANT) return right;
+        if (right.op == CONSTANT) return left;
+
+        ArrayDeque<Term> operands;
+        if (mergeLeft && mergeRight) {
+            if (left.operands.size() >= right.operands.size()) {
+                operands = left.operands;
+                operands.addAll(right.operands);
+            } else {
+                operands = right.operands;
+                for (var it = left.operands.descendingIterator(); it.hasNext(); ) operands.addFirst(it.next());
+            }
+        } else if (mergeLeft) {
+            operands = left.operands;
+            addLast(operands, op, right);
+        } else if (mergeRight) {
+            operands = right.operands;
+            addFirst(operands, op, left);
+        } else {
+            operands = new ArrayDeque<>();
+            addLast(operands, op, left);
+            addLast(operands, op, right);
+        }
+        Term term = new Term(op);
+        term.operands = operands;
+        return term;
+    }
+
+    // a finished run of the same operator that's shared with another parent is copied instead of taken over
+    private static void addLast(ArrayDeque<Term> operands, char op, Term term) {
+        if (term.op == op) operands.addAll(term.operands);
+        else operands.addLast(term);
+    }
+    private static void addFirst(ArrayDeque<Term> operands, char op, Term term) {
+        if (term.op == op) {
+            for (var it = term.operands.descendingIterator(); it.hasNext(); ) operands.addFirst(it.next());
+        } else {
+            operands.addFirst(term);
+        }
+    }
+
+    // drops repeated operands (X&X is X), a run left with one operand is just that operand
+    private Term finish(Term term) {
+        if (term.finished != null) return term.finished;
+        ArrayDeque<Term> unique = new ArrayDeque<>();
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> key = new ArrayList<>();
+        key.add((int) term.op);
+        for (Term operand : term.operands) {
+            if (seen.add(operand.id)) {
+                unique.addLast(operand);
+                key.add(operand.id);
+            }
+        }
+        if (unique.size() == 1) {
+            term.finished = unique.getFirst();
+            return term.finished;
+        }
+        term.operands = unique;
+        term.id = id(key);
+        term.finished = term;
+        return term;
+    }
+
+    private int id(char op, int operand) {
+        return id(List.of((int) op, operand));
+    }
+    private int id(List<Integer> key) {
+        return ids.computeIfAbsent(key, k -> ids.size());
+    }
+
+    /////////////////   BACK TO NODES    /////////////////
+    // children first off a stack, a term used twice becomes one shared node
+    private Node emit(Term root) {
+        Deque<Term> stack = new ArrayDeque<>();
+        Set<Term> expanded = java.util.Collections.newSetFromMap(new IdentityHashMap<>());
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Term term = stack.peek();
+            if (term.emitted != null) {
+                stack.pop();
+                continue;
+            }
+            switch (term.op) {
+                case VAR, CONSTANT -> {
+                    term.emitted = term.leaf;
+                    stack.pop();
+                }
+                case '~' -> {
+                    if (expanded.add(term)) {
+                        stack.push(term.operand);
+                    } else {
+                        term.emitted = factory.operator('~', term.operand.emitted, null);
+                        stack.pop();
+                    }
+                }
+                default -> {
+                    if (expanded.add(term)) {
+                        for (Term operand : term.operands) stack.push(operand);
+                    } else {
+                        // right associative like the parser: A&B&C is A&(B&C)
+                        var it = term.operands.descendingIterator();
+                        Node node = it.next().emitted;
+                        while (it.hasNext()) node = factory.operator(term.op, it.next().emitted, node);
+                        term.emitted = node;
+                        stack.pop();
+                    }
+                }
+            }
+        }
+        return root.emitted;
+    }
+}
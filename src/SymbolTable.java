@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+/*
+ * Interns variable names into dense int ids (0, 1, 2, ... in order of first use),
+ * so everything else can keep per variable state in plain arrays indexed by id instead of the old A-Z slots.
+ *
+ * open addressing with linear probing over String[] / int[], so a lookup is a hash and usually one compare,
+ * and nothing gets boxed into an Integer no matter how many names there are
+ * */
+public class SymbolTable {
+    private String[] keys = new String[64];
+    private int[] ids = new int[64];//only meaningful where keys[i] != null
+    private String[] names = new String[16];//id -> name
+    private int size;
+
+    public int size() {
+        return size;
+    }
+    public String name(int id) {
+        return names[id];
+    }
+
+    // id for this name, -1 if it was never interned
+    public int lookup(String name) {
+        int mask = keys.length - 1;
+        for (int i = name.hashCode() & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(name)) return ids[i];
+        }
+        return -1;
+    }
+
+    // id for this name, giving it the next free one if it's new
+    public int intern(String name) {
+        int mask = keys.length - 1;
+        int i = name.hashCode() & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(name)) return ids[i];
+        }
+        int id = size++;
+        keys[i] = name;
+        ids[i] = id;
+        if (id == names.length) names = Arrays.copyOf(names, id * 2);
+        names[id] = name;
+        if (size * 2 > keys.length) rehash();
+        return id;
+    }
+
+    // keep the table at most half full
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new String[oldKeys.length * 2];
+        ids = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) continue;
+            int i = oldKeys[j].hashCode() & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            ids[i] = oldIds[j];
+        }
+    }
+}
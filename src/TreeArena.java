@@ -0,0 +1,139 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/*
+ * A tree kept in four parallel primitive arrays instead of Node objects, for trees that are held on to rather than worked on.
+ *
+ * a Node is about 40 bytes and its ValidityRef another 24 (compressed oops, 12 byte headers, 8 byte alignment), so ~64 bytes
+ * a node before anything is evaluated. here a node is an opcode, two child indices and a validity code, 10 bytes:
+ *
+ *      ops[i]          VAR, NOT, AND, OR, or OTHER for an operator that didn't parse
+ *      left[i]         VAR: the variable id, OTHER: the operator char, NOT/AND/OR: the left child (-1 for none)
+ *      right[i]        AND/OR: the right child (-1 for none)
+ *      validity[i]     ConditionalValidity ordinal, what the node was last evaluated as (a variable: its value)
+ *
+ * nodes are numbered children first, shared subexpressions and variables once, the root is the last one.
+ * variables[id] is every variable's value (-1 for ids that never got a Node, so toNodes() doesn't make them either).
+ *
+ * LogicTree.compact() swaps its Nodes for one of these, toNodes() gives them back (the Node view) when something needs them.
+ * */
+final class TreeArena {
+    static final byte VAR = 0, NOT = 1, AND = 2, OR = 3, OTHER = 4;
+    // what the same tree costs as objects, see above
+    static final int NODE_BYTES = 40, VALIDITY_REF_BYTES = 24;
+    private static final int ARRAY_HEADER = 16;
+
+    private final byte[] ops;
+    private final int[] left, right;
+    private final byte[] validity;
+    private final byte[] variables;
+
+    TreeArena(Node root, byte[] variables) {
+        List<Node> order = Node.postorder(root);
+        int size = order.size();
+        ops = new byte[size];
+        left = new int[size];
+        right = new int[size];
+        validity = new byte[size];
+        this.variables = variables.clone();
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Node node = order.get(i);
+            index.put(node, i);
+            validity[i] = (byte) node.validity.value.ordinal();
+            right[i] = -1;
+            if (node.isVariable()) {
+                ops[i] = VAR;
+                left[i] = node.symbol;
+            } else if (node.value == '~' || node.value == '&' || node.value == '?') {
+                ops[i] = node.value == '~' ? NOT : node.value == '&' ? AND : OR;
+                left[i] = node.left == null ? -1 : index.get(node.left);
+                right[i] = node.right == null ? -1 : index.get(node.right);
+            } else {
+                ops[i] = OTHER;
+                left[i] = node.value;
+            }
+        }
+    }
+
+    int size() {
+        return ops.length;
+    }
+    int variableCount() {
+        return variables.length;
+    }
+    // the variable's value as an ordinal, -1 if it has no Node
+    byte variable(int id) {
+        return variables[id];
+    }
+
+    /*
+     * the Nodes back, children first so every parent can be linked up as it's made.
+     * variables come from variableNode so they're the tree's shared ones, their values are set from variables[]
+     * */
+    Node toNodes(IntFunction<Node> variableNode) {
+        for (int id = 0; id < variables.length; id++) {
+            if (variables[id] >= 0) variableNode.apply(id).validity.value = CompiledExpression.VALUES[variables[id]];
+        }
+        Node[] nodes = new Node[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            Node node;
+            switch (ops[i]) {
+                case VAR -> node = variableNode.apply(left[i]);
+                case OTHER -> node = new Node((char) left[i]);
+                default -> {
+                    node = new Node(ops[i] == NOT ? '~' : ops[i] == AND ? '&' : '?');
+                    node.left = left[i] < 0 ? null : nodes[left[i]];
+                    node.right = right[i] < 0 ? null : nodes[right[i]];
+                }
+            }
+            node.validity.value = CompiledExpression.VALUES[validity[i]];
+            nodes[i] = node;
+        }
+        return ops.length == 0 ? null : nodes[ops.length - 1];
+    }
+
+    /*
+     * what LogicTree.evaluateNode does, over the arrays: one pass in order, every operator's value written to validity[]
+     * so toNodes() hands back the same values a Node tree would have. returns the number of operators worked out
+     * */
+    int evaluate() {
+        int evaluated = 0;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case VAR -> {
+                    continue;
+                }
+                case NOT -> validity[i] = CompiledExpression.NOT_TABLE[valueOf(left[i])];
+                case AND -> validity[i] = CompiledExpression.AND_TABLE[valueOf(left[i]) * 4 + valueOf(right[i])];
+                case OR -> validity[i] = CompiledExpression.OR_TABLE[valueOf(left[i]) * 4 + valueOf(right[i])];
+                default -> {
+                    System.out.println("Error: Unknown operator " + (char) left[i]);
+                    validity[i] = CompiledExpression.UNKNOWN;
+                }
+            }
+            evaluated++;
+        }
+        return evaluated;
+    }
+    private byte valueOf(int node) {
+        return node < 0 ? CompiledExpression.UNKNOWN : validity[node];
+    }
+    ConditionalValidity rootValue() {
+        return ops.length == 0 ? ConditionalValidity.UNKNOWN : CompiledExpression.VALUES[validity[ops.length - 1]];
+    }
+
+    /////////////////   MEMORY    /////////////////
+    // the arrays, headers included (the SymbolTable is the tree's either way, so neither side counts it)
+    long bytes() {
+        return array(ops.length) + 2 * array(4L * left.length) + array(validity.length) + array(variables.length);
+    }
+    // the same nodes as Node objects with their ValidityRefs, the "" descriptions are one interned String
+    static long nodeBytes(int nodes) {
+        return (long) nodes * (NODE_BYTES + VALIDITY_REF_BYTES);
+    }
+    private static long array(long bytes) {
+        return (ARRAY_HEADER + bytes + 7) & ~7L;
+    }
+}
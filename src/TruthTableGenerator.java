@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Generates the rows of a partial truth table from a BitTruthTable, either in order on the calling thread or split
+ * into ranges of words across a fork/join pool.
+ *
+ * BitTruthTable is read only once it's built and every worker gets its own bit-planes, so the workers share nothing
+ * with each other or with the tree (the old loop had to swap every nodeReferences[*].validity in and out per row).
+ * For writing, ranges are handed out in order and a bounded window of them is in flight at once, the calling thread
+ * takes them back in the same order and passes their rows to the writer, so the output is identical to the sequential one.
+ * A range is as many words as keep its cells under TASK_CELLS (one word at least), so each task in the window holds
+ * TASK_CELLS or 64 rows of cells, whichever is more: memory grows with the columns and not with the rows.
+ * Counting doesn't need the rows at all, it's a popcount over the planes of the expression's slot.
+ * Nothing here is written after the constructor, so one generator can write or count on any number of threads at once.
+ * */
+public class TruthTableGenerator {
+    private static final int CHUNK_WORDS = 64;//at most 4096 rows per task
+    private static final int TASK_CELLS = 1 << 18;//and about this many cells, so a wide table takes fewer rows per task
+    private static final int COUNT_WORDS = 1024;
+
+    private final String[] headers;
+    private final BitTruthTable table;
+    private final byte[] knownCells;//the columns that never change, first in every row
+    private final int[] slots;      //BitTruthTable slot for every other column
+    private final int resultSlot;   //the whole expression
+    private final int chunkWords;   //words per RangeTask
+
+    TruthTableGenerator(String[] headers, BitTruthTable table, byte[] knownCells, int[] slots, int resultSlot) {
+        this.headers = headers;
+        this.table = table;
+        this.knownCells = knownCells;
+        this.slots = slots;
+        this.resultSlot = resultSlot;
+        chunkWords = (int) Math.max(1, Math.min(CHUNK_WORDS, TASK_CELLS / (64L * Math.max(1, slots.length))));
+    }
+
+    public long rowCount() {
+        return table.rowCount();
+    }
+    // about as many nodes as it holds, for ExpressionCache
+    int weight() {
+        return table.slotCount() + headers.length + 1;
+    }
+
+    /////////////////   WRITING    /////////////////
+    public void write(TruthTableWriter writer) throws IOException {
+        Metrics.Timed start = Metrics.start(Metrics.Operation.TRUTH_TABLE);
+        writer.header(headers);
+        long[] t = table.newPlane();
+        long[] f = table.newPlane();
+        byte[] row = newRow();
+        for (long word = 0; word < table.wordCount(); word++) {
+            table.evaluateWord(word, t, f);
+            int rowsInWord = rowsIn(word);
+            for (int bit = 0; bit < rowsInWord; bit++) {
+                fill(row, t, f, bit);
+                writer.row(row);
+            }
+        }
+        writer.finish();
+        Metrics.tableWritten(start, table.rowCount());
+    }
+
+    public void write(TruthTableWriter writer, ForkJoinPool pool) throws IOException {
+        Metrics.Timed start = Metrics.start(Metrics.Operation.TRUTH_TABLE);
+        writer.header(headers);
+        long words = table.wordCount();
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>();
+        byte[] row = newRow();
+        long next = 0;
+        while (next < words || !inFlight.isEmpty()) {
+            while (next < words && inFlight.size() < window) {
+                inFlight.add(pool.submit(new RangeTask(next, Math.min(words, next + chunkWords))));
+                next += chunkWords;
+            }
+            byte[] cells = inFlight.poll().join();
+            for (int offset = 0; offset < cells.length; offset += slots.length) {
+                System.arraycopy(cells, offset, row, knownCells.length, slots.length);
+                writer.row(row);
+            }
+        }
+        writer.finish();
+        Metrics.tableWritten(start, table.rowCount());
+    }
+
+    // the varying cells of every row in [from, to) words, one row after another
+    @SuppressWarnings("serial")//fork/join tasks are never serialized
+    private final class RangeTask extends RecursiveTask<byte[]> {
+        private final long from, to;
+
+        RangeTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            long rows = Math.min(table.rowCount(), to * 64) - from * 64;
+            byte[] cells = new byte[Math.toIntExact(rows * slots.length)];
+            long[] t = table.newPlane();
+            long[] f = table.newPlane();
+            int offset = 0;
+            for (long word = from; word < to; word++) {
+                table.evaluateWord(word, t, f);
+                int rowsInWord = rowsIn(word);
+                for (int bit = 0; bit < rowsInWord; bit++) {
+                    for (int j = 0; j < slots.length; j++) {
+                        cells[offset++] = cell(t, f, slots[j], bit);
+                    }
+                }
+            }
+            return cells;
+        }
+    }
+
+    /////////////////   COUNTING    /////////////////
+    // how many rows the whole expression comes out as value
+    public long count(ConditionalValidity value) {
+        return count(value, ForkJoinPool.commonPool());
+    }
+    public long count(ConditionalValidity value, ForkJoinPool pool) {
+        if (resultSlot < 0) return value == ConditionalValidity.UNKNOWN ? rowCount() : 0;
+        return pool.invoke(new CountTask(value, 0, table.wordCount()));
+    }
+
+    @SuppressWarnings("serial")
+    private final class CountTask extends RecursiveTask<Long> {
+        private final ConditionalValidity value;
+        private final long from, to;
+
+        CountTask(ConditionalValidity value, long from, long to) {
+            this.value = value;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from > COUNT_WORDS) {
+                long middle = (from + to) >>> 1;
+                CountTask left = new CountTask(value, from, middle);
+                left.fork();
+                long right = new CountTask(value, middle, to).compute();
+                return left.join() + right;
+            }
+            long[] t = table.newPlane();
+            long[] f = table.newPlane();
+            long count = 0;
+            for (long word = from; word < to; word++) {
+                table.evaluateWord(word, t, f);
+                long rt = t[resultSlot], rf = f[resultSlot];
+                long bits = switch (value) {
+                    case TRUE -> rt & ~rf;
+                    case FALSE -> rf & ~rt;
+                    case INVALID -> rt & rf;
+                    case UNKNOWN -> ~rt & ~rf;
+                };
+                int rowsInWord = rowsIn(word);
+                if (rowsInWord < 64) bits &= (1L << rowsInWord) - 1;
+                count += Long.bitCount(bits);
+            }
+            return count;
+        }
+    }
+
+    /////////////////   HELPERS    /////////////////
+    private byte[] newRow() {
+        byte[] row = new byte[knownCells.length + slots.length];
+        System.arraycopy(knownCells, 0, row, 0, knownCells.length);
+        return row;
+    }
+    private void fill(byte[] row, long[] t, long[] f, int bit) {
+        for (int j = 0; j < slots.length; j++) {
+            row[knownCells.length + j] = cell(t, f, slots[j], bit);
+        }
+    }
+    private static byte cell(long[] t, long[] f, int slot, int bit) {
+        return (byte) BitTruthTable.decode(t[slot], f[slot], bit).ordinal();
+    }
+    private int rowsIn(long word) {
+        return (int) Math.min(64, table.rowCount() - word * 64);
+    }
+}
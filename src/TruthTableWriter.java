@@ -0,0 +1,169 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Where truth table rows go as they are generated, so nothing has to be held on to but the current row.
+ *
+ * Every cell is T, F, ? or X, so the column widths only depend on the headers and can be worked out before the first row,
+ * which is what lets the rows be written straight through a buffer instead of collected first.
+ * Cells come in as ConditionalValidity ordinals, one byte each.
+ *
+ *      text()      the table printPartialTruthTable has always printed
+ *      csv()       header row and one line per row, for spreadsheets and scripts
+ *      binary()    "LTT2", column count, the headers (each an int byte length and its UTF-8 bytes, a header can be far
+ *                  over writeUTF's 64K), then every row packed 2 bits per cell (4 cells per byte, first cell in the low bits)
+ *                  holding the ordinal, rows padded to a whole byte
+ *
+ * text and csv lines both end in '\n' whatever the platform, so the same table always comes out as the same bytes
+ * */
+public abstract class TruthTableWriter {
+    // ordinal -> symbol, FALSE TRUE INVALID UNKNOWN
+    private static final char[] SYMBOLS = new char[4];
+    static {
+        SYMBOLS[ConditionalValidity.FALSE.ordinal()] = 'F';
+        SYMBOLS[ConditionalValidity.TRUE.ordinal()] = 'T';
+        SYMBOLS[ConditionalValidity.INVALID.ordinal()] = 'X';
+        SYMBOLS[ConditionalValidity.UNKNOWN.ordinal()] = '?';
+    }
+
+    public abstract void header(String[] headers) throws IOException;
+    public abstract void row(byte[] cells) throws IOException;
+    // flushes everything written so far, doesn't close what's underneath
+    public abstract void finish() throws IOException;
+
+    public static TruthTableWriter text(Writer out) {
+        return new Text(out);
+    }
+    public static TruthTableWriter csv(Writer out) {
+        return new Csv(out);
+    }
+    public static TruthTableWriter binary(OutputStream out) {
+        return new Binary(out);
+    }
+
+    /////////////////   FORMATS    /////////////////
+    private static final class Text extends TruthTableWriter {
+        private final Writer out;
+        //every row is the same line with only the symbols changing, so keep the line and overwrite them
+        private char[] line;
+        private int[] offsets;
+
+        Text(Writer out) {
+            this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        }
+
+        @Override
+        public void header(String[] headers) throws IOException {
+            StringBuilder headerLine = new StringBuilder();
+            StringBuilder rowLine = new StringBuilder();
+            offsets = new int[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                int width = Math.max(headers[i].length(), 1);
+                offsets[i] = rowLine.length();
+                // left-aligned, so the padding goes after the value
+                headerLine.append(headers[i]).repeat(' ', width - headers[i].length());
+                rowLine.repeat(' ', width);
+                if (i < headers.length - 1) {
+                    headerLine.append(" | ");
+                    rowLine.append(" | ");
+                }
+            }
+            headerLine.append('\n');
+            rowLine.append('\n');
+            out.write(headerLine.toString());
+            line = rowLine.toString().toCharArray();
+        }
+
+        @Override
+        public void row(byte[] cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                line[offsets[i]] = SYMBOLS[cells[i]];
+            }
+            out.write(line);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class Csv extends TruthTableWriter {
+        private final Writer out;
+
+        Csv(Writer out) {
+            this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        }
+
+        @Override
+        public void header(String[] headers) throws IOException {
+            for (int i = 0; i < headers.length; i++) {
+                if (i > 0) out.write(',');
+                String header = headers[i];
+                if (header.indexOf(',') >= 0 || header.indexOf('"') >= 0) {
+                    out.write('"');
+                    out.write(header.replace("\"", "\"\""));
+                    out.write('"');
+                } else {
+                    out.write(header);
+                }
+            }
+            out.write('\n');
+        }
+
+        @Override
+        public void row(byte[] cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) out.write(',');
+                out.write(SYMBOLS[cells[i]]);
+            }
+            out.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class Binary extends TruthTableWriter {
+        private final DataOutputStream out;
+        private byte[] packed;
+
+        Binary(OutputStream out) {
+            this.out = new DataOutputStream(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void header(String[] headers) throws IOException {
+            out.writeBytes("LTT2");
+            out.writeInt(headers.length);
+            for (String header : headers) {
+                byte[] utf8 = header.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            packed = new byte[(headers.length + 3) / 4];
+        }
+
+        @Override
+        public void row(byte[] cells) throws IOException {
+            Arrays.fill(packed, (byte) 0);
+            for (int i = 0; i < cells.length; i++) {
+                packed[i >> 2] |= (byte) (cells[i] << ((i & 3) * 2));
+            }
+            out.write(packed);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+ * Tseitin encoding of a Node tree into SatSolver clauses.
+ * every distinct operator node gets its own solver variable x with clauses that force x to equal the operator:
+ *      x = a & b       (~x ? a), (~x ? b), (x ? ~a ? ~b)
+ *      x = a ? b       (x ? ~a), (x ? ~b), (~x ? a ? b)
+ *      x = ~a          no new variable, just the negated literal
+ * so the clause count grows linearly with the tree instead of blowing up like distributing into CNF would.
+ * */
+public class TseitinEncoder {
+    private final SatSolver solver;
+    private int[] variables = new int[16];//variable id -> solver variable, 0 when not made yet
+    private final Map<Node, Integer> literals = new IdentityHashMap<>();
+
+    public TseitinEncoder(SatSolver solver) {
+        this.solver = solver;
+    }
+
+    // solver variable for a variable id, made on first use
+    public int variable(int id) {
+        if (id >= variables.length) variables = Arrays.copyOf(variables, Math.max(id + 1, variables.length * 2));
+        if (variables[id] == 0) variables[id] = solver.newVariable();
+        return variables[id];
+    }
+    public boolean hasVariable(int id) {
+        return id < variables.length && variables[id] != 0;
+    }
+
+    // literal that is true exactly when the expression is TRUE
+    public int encode(Node root) {
+        for (Node node : Node.postorder(root)) {
+            int literal;
+            if (node.isVariable()) {
+                literal = variable(node.symbol);
+            } else if (node.value == '~') {
+                literal = -literals.get(node.left);
+            } else {
+                int a = literals.get(node.left);
+                int b = literals.get(node.right);
+                literal = solver.newVariable();
+                if (node.value == '&') {
+                    solver.addClause(-literal, a);
+                    solver.addClause(-literal, b);
+                    solver.addClause(literal, -a, -b);
+                } else {
+                    solver.addClause(literal, -a);
+                    solver.addClause(literal, -b);
+                    solver.addClause(-literal, a, b);
+                }
+            }
+            literals.put(node, literal);
+        }
+        return literals.get(root);
+    }
+}
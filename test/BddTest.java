@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BddTest {
+    private static final String[] NAMES = RandomExpressions.names(5);
+
+    // the rows of all NAMES that come out TRUE, worked out by LogicTree
+    private static boolean[] trueRows(String expression) {
+        boolean[] rows = new boolean[1 << NAMES.length];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = RandomExpressions.evaluate(expression, NAMES, row) == ConditionalValidity.TRUE;
+        }
+        return rows;
+    }
+
+    // fixing every variable to a row's values leaves the terminal that row evaluates to, and satCount counts those rows
+    @Test
+    void restrictAndSatCountMatchEveryRow() {
+        Random random = new Random(15);
+        for (int round = 0; round < 300; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 4);
+            boolean[] rows = trueRows(expression);
+            Bdd bdd = new Bdd(NAMES);
+            int node = new LogicTree(expression).toBdd(bdd);
+
+            long count = 0;
+            for (int row = 0; row < rows.length; row++) {
+                int restricted = node;
+                for (int v = 0; v < NAMES.length; v++) restricted = bdd.restrict(restricted, NAMES[v], (row >> v & 1) == 1);
+                assertEquals(rows[row] ? Bdd.TRUE : Bdd.FALSE, restricted, expression + " row " + row);
+                if (rows[row]) count++;
+            }
+            assertEquals(BigInteger.valueOf(count), bdd.satCount(node), expression);
+        }
+    }
+
+    // countSatisfying counts the assignments of the tree's own variables, so the rows over NAMES are divided by the ones it doesn't have
+    @Test
+    void countSatisfyingMatchesTheTruthTable() {
+        Random random = new Random(150);
+        for (int round = 0; round < 300; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 4);
+            String[] predicates = RandomExpressions.predicates(random, NAMES, 3);
+            long rows = 0;
+            for (int row = 0; row < 1 << NAMES.length; row++) {
+                if (RandomExpressions.keeps(predicates, NAMES, row)
+                        && RandomExpressions.evaluate(expression, NAMES, row) == ConditionalValidity.TRUE) rows++;
+            }
+            String mentioned = expression + String.join(" ", predicates);
+            int missing = 0;
+            for (String name : NAMES) if (!mentioned.contains(name)) missing++;
+            assertEquals(BigInteger.valueOf(rows >> missing), new LogicTree(expression, predicates).countSatisfying(),
+                    expression + " with " + String.join(", ", predicates));
+        }
+    }
+
+    @Test
+    void equivalentExactlyWhenEveryRowAgrees() {
+        Random random = new Random(1500);
+        int equivalent = 0;
+        for (int round = 0; round < 500; round++) {
+            String a = RandomExpressions.expression(random, NAMES, 3), b = RandomExpressions.expression(random, NAMES, 3);
+            boolean same = Arrays.equals(trueRows(a), trueRows(b));
+            if (same) equivalent++;
+            assertEquals(same, new LogicTree(a).isEquivalent(new LogicTree(b)), a + " vs " + b);
+            // the same function written differently
+            assertTrue(new LogicTree(a).isEquivalent(new LogicTree("~~(" + a + ") & (" + b + " ? ~" + b + ")")), a);
+        }
+        assertTrue(equivalent > 0);
+        assertFalse(new LogicTree("A & B").isEquivalent(new LogicTree("A ? B")));
+    }
+}
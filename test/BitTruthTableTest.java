@@ -0,0 +1,41 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BitTruthTableTest {
+    // V0 & V1 & ... with none of them known
+    private static LogicTree unknowns(int count) {
+        StringBuilder sb = new StringBuilder("V0");
+        for (int i = 1; i < count; i++) sb.append(" & V").append(i);
+        return new LogicTree(sb.toString());
+    }
+
+    @Test
+    void rowCountStopsAtTheLastOneThatFits() {
+        assertEquals(1L << 62, unknowns(BitTruthTable.MAX_UNKNOWNS).truthTable().rowCount());
+        for (int count : new int[]{63, 64, 65, 100}) {
+            LogicTree tree = unknowns(count);
+            assertThrows(IllegalArgumentException.class, () -> tree.countTruthTableRows(ConditionalValidity.TRUE));
+            assertThrows(IllegalArgumentException.class, () -> tree.writePartialTruthTable(TruthTableWriter.csv(new java.io.StringWriter())));
+        }
+    }
+
+    // the counts against every row worked out by LogicTree, each variable pinned down by a predicate
+    @Test
+    void countsMatchEvaluatingEveryRow() {
+        String expression = "(A & ~B) ? (C = D) ? (B & ~(A > D))";
+        String[] names = {"A", "B", "C", "D"};
+        LogicTree partial = new LogicTree(expression);
+        assertEquals(names.length, partial.countUnknownVariables());
+        long[] expected = new long[ConditionalValidity.values().length];
+        for (int row = 0; row < 1 << names.length; row++) {
+            String[] predicates = new String[names.length];
+            for (int v = 0; v < names.length; v++) predicates[v] = ((row >> v & 1) == 1 ? "" : "~") + names[v];
+            expected[new LogicTree(expression, predicates).evaluate().ordinal()]++;
+        }
+        for (ConditionalValidity value : ConditionalValidity.values()) {
+            assertEquals(expected[value.ordinal()], partial.countTruthTableRows(value), value.name());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkRunnerTest {
+    @TempDir
+    Path directory;
+
+    private List<String> run(BulkRunner runner, String... lines) throws IOException {
+        Path input = directory.resolve("bundles");
+        Files.write(input, List.of(lines));
+        StringWriter out = new StringWriter();
+        runner.run(input, out);
+        return out.toString().lines().toList();
+    }
+
+    @Test
+    void readsJsonLines() throws IOException {
+        List<String> out = run(new BulkRunner(false, false, false, 2),
+                "{\"id\": \"rule-17\", \"expression\": \"P & ~(S ? Q)\", \"predicates\": [\"P\", \"Q > ~P\"]}",
+                "  {\"expression\": \"a & b\", \"owner\": {\"name\": \"x\", \"tags\": [1, true, null]}, \"predicates\": [\"a\", \"b\"], \"id\": 42}",
+                "# a comment, then a blank line",
+                "",
+                "{\"id\": \"esc\\\"aped\", \"expression\": \"P\\u0020?\\tQ\", \"predicates\": []}",
+                "{}");
+        assertEquals(List.of(
+                "{\"line\": 1, \"id\": \"rule-17\", \"result\": \"" + new LogicTree("P & ~(S ? Q)", "P", "Q > ~P").evaluate() + "\"}",
+                "{\"line\": 2, \"id\": \"42\", \"result\": \"TRUE\"}",
+                "{\"line\": 5, \"id\": \"esc\\\"aped\", \"result\": \"UNKNOWN\"}",
+                "{\"line\": 6, \"error\": \"Missing expression\"}"), out);
+    }
+
+    @Test
+    void readsTabSeparatedLines() throws IOException {
+        List<String> out = run(new BulkRunner(false, false, true, 2),
+                "P & ~(S ? Q)\tP\tQ > ~P",
+                "P & Q\tP\t~P\tQ");
+        assertEquals(List.of("1\t" + new LogicTree("P & ~(S ? Q)", "P", "Q > ~P").evaluate(), "2\tINVALID\tP\t~P"), out);
+    }
+
+    // every verdict comes out on its own line in input order, however the workers finish
+    @Test
+    void keepsInputOrder() throws IOException {
+        int bundles = 5000;
+        String[] lines = new String[bundles];
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < bundles; i++) {
+            // every so often a much bigger one, so later bundles finish first
+            String expression = i % 97 == 0 ? "V0" + " & V0".repeat(2000) : "A" + i + " & B" + i;
+            String predicate = i % 3 == 0 ? "~A" + i : "A" + i;
+            lines[i] = "{\"id\": \"b" + i + "\", \"expression\": \"" + expression + "\", \"predicates\": [\"" + predicate + "\"]}";
+            expected.add("{\"line\": " + (i + 1) + ", \"id\": \"b" + i + "\", \"result\": \"" + new LogicTree(expression.toUpperCase(), predicate.toUpperCase()).evaluate() + "\"}");
+        }
+        assertEquals(expected, run(new BulkRunner(false, false, false, 8), lines));
+    }
+
+    @Test
+    void errorsAreVerdictsAndNothingIsPrinted() throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed));
+        List<String> out;
+        try {
+            out = run(new BulkRunner(false, true, false, 2),
+                    "{\"id\": \"open\", \"expression\": \"P & (Q\"}",
+                    "{\"id\": \"predicate\", \"expression\": \"P & Q\", \"predicates\": [\"P\", \"X39>\"]}",
+                    "{\"id\": \"wide\", \"expression\": \"" + wide(BulkRunner.MAX_TABLE_UNKNOWNS + 1) + "\"}",
+                    "{\"id\": \"broken\", \"expression\": \"P\"",
+                    "{\"id\": \"fine\", \"expression\": \"P\", \"predicates\": [\"P\"]}");
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("", printed.toString());
+        assertEquals(5, out.size());
+        assertTrue(out.get(0).startsWith("{\"line\": 1, \"id\": \"open\", \"error\": \"Could not parse P & (Q: "), out.get(0));
+        assertEquals("{\"line\": 2, \"id\": \"predicate\", \"error\": \"Invalid if-then predicate: X39>\"}", out.get(1));
+        assertEquals("{\"line\": 3, \"id\": \"wide\", \"error\": \"Truth table of 17 unknown variables is over the limit of 16\"}", out.get(2));
+        assertEquals("{\"line\": 4, \"error\": \"Unexpected end of line\"}", out.get(3));
+        assertTrue(out.get(4).startsWith("{\"line\": 5, \"id\": \"fine\", \"result\": \"TRUE\", \"table\": "), out.get(4));
+    }
+
+    private static String wide(int variables) {
+        StringBuilder sb = new StringBuilder("V0");
+        for (int i = 1; i < variables; i++) sb.append(" & V").append(i);
+        return sb.toString();
+    }
+}
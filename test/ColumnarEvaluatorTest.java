@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnarEvaluatorTest {
+    private static final String[] NAMES = RandomExpressions.names(5);
+    private static final ConditionalValidity[] VALUES = ConditionalValidity.values();
+
+    // scalar always, the vector kernel too when it's compiled in and the module is there (mvn -Pvector test)
+    private static List<ColumnKernel> kernels() {
+        List<ColumnKernel> kernels = new ArrayList<>(List.of(ColumnKernel.scalar()));
+        if (ColumnKernel.vector() != null) kernels.add(ColumnKernel.vector());
+        return kernels;
+    }
+
+    /*
+     * some variables get a column of facts, the rest keep a settled value (any of the four, from predicates), and every row
+     * has to come out as LogicTree evaluates it with the row's facts as predicates. a few runs are over several blocks
+     * */
+    @Test
+    void everyRowMatchesLogicTree() {
+        Random random = new Random(23);
+        for (int round = 0; round < 300; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 5);
+            List<String> settled = new ArrayList<>();
+            boolean[] columned = new boolean[NAMES.length];
+            for (int v = 0; v < NAMES.length; v++) {
+                columned[v] = random.nextBoolean();
+                if (!columned[v]) RandomExpressions.set(settled, NAMES[v], VALUES[random.nextInt(VALUES.length)]);
+            }
+            LogicTree tree = new LogicTree(expression, settled.toArray(new String[0]));
+            SymbolTable symbols = tree.getSymbols();
+
+            long rows = round % 50 == 0 ? 3L * ColumnarEvaluator.BLOCK * 64 + 17 : 1 + random.nextInt(300);
+            int words = (int) ((rows + 63) >>> 6);
+            long[][] columns = new long[symbols.size()][];
+            for (int v = 0; v < NAMES.length; v++) {
+                int id = symbols.lookup(NAMES[v]);
+                if (!columned[v] || id < 0) continue;
+                columns[id] = new long[words];
+                for (int w = 0; w < words; w++) columns[id][w] = random.nextLong();
+            }
+
+            // rows with the same facts come out the same, so LogicTree only has to answer each pattern once
+            ConditionalValidity[] expected = new ConditionalValidity[1 << NAMES.length];
+            for (int pattern = 0; pattern < expected.length; pattern++) {
+                List<String> predicates = new ArrayList<>(settled);
+                for (int v = 0; v < NAMES.length; v++) {
+                    if (columned[v]) predicates.add(((pattern >> v & 1) == 1 ? "" : "~") + NAMES[v]);
+                }
+                expected[pattern] = new LogicTree(expression, predicates.toArray(new String[0])).evaluate();
+            }
+
+            ColumnarEvaluator columnar = tree.columnar();
+            long[] counts = null;
+            for (ColumnKernel kernel : kernels()) {
+                ColumnarEvaluator.Result result = columnar.evaluate(columns, rows, kernel);
+                long[] expectedCounts = new long[VALUES.length];
+                for (long row = 0; row < rows; row++) {
+                    int pattern = 0;
+                    for (int v = 0; v < NAMES.length; v++) {
+                        int id = symbols.lookup(NAMES[v]);
+                        if (id >= 0 && columns[id] != null && (columns[id][(int) (row >>> 6)] >>> (row & 63) & 1) == 1) pattern |= 1 << v;
+                    }
+                    ConditionalValidity value = expected[pattern];
+                    expectedCounts[value.ordinal()]++;
+                    assertEquals(value, result.get(row), kernel + ": " + expression + " with " + settled + " row " + row);
+                }
+                long[] resultCounts = new long[VALUES.length];
+                for (ConditionalValidity value : VALUES) resultCounts[value.ordinal()] = result.count(value);
+                assertArrayEquals(expectedCounts, resultCounts, kernel + ": " + expression);
+                if (counts != null) assertArrayEquals(counts, resultCounts);
+                counts = resultCounts;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompiledExpressionTest {
+    private static String and(int variables) {
+        StringBuilder sb = new StringBuilder("V0");
+        for (int i = 1; i < variables; i++) sb.append(" & V").append(i);
+        return sb.toString();
+    }
+
+    @Test
+    void masksCoverSixtyFourVariables() {
+        CompiledExpression compiled = new LogicTree(and(64)).compile();
+        assertEquals(ConditionalValidity.TRUE, compiled.evaluate(-1L));
+        assertEquals(ConditionalValidity.FALSE, compiled.evaluate(Long.MAX_VALUE));
+    }
+
+    @Test
+    void masksRejectMoreThanSixtyFourVariables() {
+        CompiledExpression compiled = new LogicTree(and(70)).compile();
+        assertThrows(IllegalArgumentException.class, () -> compiled.evaluate(-1L));
+        assertThrows(IllegalArgumentException.class, () -> new BatchEvaluator(compiled).evaluate(new long[]{-1L}));
+
+        // the column path takes any number of them
+        boolean[][] columns = new boolean[70][];
+        for (int id = 0; id < columns.length; id++) {
+            columns[id] = new boolean[]{true, id != 69};
+        }
+        byte[] results = new BatchEvaluator(compiled).evaluate(columns);
+        assertArrayEquals(new byte[]{CompiledExpression.TRUE, CompiledExpression.FALSE}, results);
+
+        byte[] assignment = new byte[70];
+        Arrays.fill(assignment, CompiledExpression.TRUE);
+        assertEquals(ConditionalValidity.TRUE, compiled.evaluate(assignment));
+    }
+}
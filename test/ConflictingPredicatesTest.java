@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConflictingPredicatesTest {
+    private static final String[] NAMES = RandomExpressions.names(4);
+    private static final String EXPRESSION = "A & B & C & D";
+
+    // some variable came out INVALID, which is what a conflict is
+    private static boolean conflicts(String... predicates) {
+        for (byte value : new LogicTree(EXPRESSION, predicates).getAssignment()) {
+            if (value == ConditionalValidity.INVALID.ordinal()) return true;
+        }
+        return false;
+    }
+    private static String[] pick(String[] predicates, int[] positions) {
+        String[] picked = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) picked[i] = predicates[positions[i]];
+        return picked;
+    }
+
+    /*
+     * against fresh trees made from subsets of the predicates: the core is empty exactly when nothing is INVALID,
+     * the core on its own is still INVALID, and leaving out any one of its predicates isn't any more
+     * */
+    @Test
+    void coreIsAConflictAndMinimal() {
+        Random random = new Random(25);
+        int conflicting = 0, smaller = 0;
+        for (int round = 0; round < 2000; round++) {
+            String[] predicates = new String[2 + random.nextInt(8)];
+            for (int i = 0; i < predicates.length; i++) predicates[i] = RandomExpressions.predicate(random, NAMES);
+            String message = String.join(", ", predicates);
+
+            int[] core = new LogicTree(EXPRESSION, predicates).getConflictingPredicates();
+            if (!conflicts(predicates)) {
+                assertArrayEquals(new int[0], core, message);
+                continue;
+            }
+            conflicting++;
+            if (core.length < predicates.length) smaller++;
+            int[] sorted = core.clone();
+            Arrays.sort(sorted);
+            assertArrayEquals(sorted, core, message);
+            assertTrue(core.length > 0 && core[core.length - 1] < predicates.length, message);
+
+            assertTrue(conflicts(pick(predicates, core)), message + ": " + Arrays.toString(core));
+            for (int leftOut = 0; leftOut < core.length; leftOut++) {
+                int[] rest = new int[core.length - 1];
+                for (int i = 0, j = 0; i < core.length; i++) if (i != leftOut) rest[j++] = core[i];
+                assertFalse(conflicts(pick(predicates, rest)), message + ": " + Arrays.toString(core) + " without " + core[leftOut]);
+            }
+        }
+        assertTrue(conflicting > 200 && smaller > 100, conflicting + " conflicts, " + smaller + " cut down");
+    }
+
+    // positions count predicates that didn't parse, so they point into what the caller passed
+    @Test
+    void positionsAreTheCallersEvenWithUnreadablePredicates() {
+        String[] predicates = {"A>", "B", "A>C", "??", "~C", "D", "A"};
+        LogicTree tree = LogicTree.quiet(EXPRESSION, predicates);
+        assertEquals(2, tree.getPredicateErrors().size());
+        assertArrayEquals(new int[]{2, 4, 6}, tree.getConflictingPredicates());
+    }
+}
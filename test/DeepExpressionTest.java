@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * expressions 100k levels deep through everything that used to recurse once per level.
+ * surefire runs these with a 512k stack, so a recursive walk would overflow long before the bottom
+ * */
+class DeepExpressionTest {
+    static final int DEPTH = 100_000;
+
+    // V0&(V1&(V2&(...&V99999)))
+    private static String chain() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DEPTH - 1; i++) sb.append("(V").append(i).append('&');
+        sb.append('V').append(DEPTH - 1);
+        sb.append(")".repeat(DEPTH - 1));
+        return sb.toString();
+    }
+
+    // ~(~(~(...A)))
+    private static String negations(int depth) {
+        return "~(".repeat(depth) + "A" + ")".repeat(depth);
+    }
+
+    private static String[] allTrue(int falseAt) {
+        String[] predicates = new String[DEPTH];
+        for (int i = 0; i < DEPTH; i++) predicates[i] = (i == falseAt ? "~V" : "V") + i;
+        return predicates;
+    }
+
+    @Test
+    void chainParsesAndEvaluates() {
+        LogicTree tree = assertDoesNotThrow(() -> new LogicTree(chain(), allTrue(-1)));
+        assertTrue(!tree.isEmpty());
+        assertEquals(ConditionalValidity.TRUE, tree.evaluate());
+
+        // the deepest variable decides it
+        assertEquals(ConditionalValidity.FALSE, new LogicTree(chain(), allTrue(DEPTH - 1)).evaluate());
+        // and nothing known is UNKNOWN
+        assertEquals(ConditionalValidity.UNKNOWN, new LogicTree(chain()).evaluate());
+    }
+
+    @Test
+    void chainPrintsAndWritesBack() {
+        String expression = chain();
+        LogicTree tree = new LogicTree(expression);
+
+        // every ( of the input is one & node, written back the same way
+        assertEquals(expression, tree.getExpressionString());
+        assertEquals(DEPTH - 1, tree.operatorColumns().size());
+
+        String printed = assertDoesNotThrow(tree::getTreeString);
+        assertEquals(2 * DEPTH - 1, printed.lines().count());
+        assertTrue(printed.lines().anyMatch(line -> line.endsWith("V" + (DEPTH - 1) + ": UNKNOWN")));
+        assertDoesNotThrow(() -> printQuietly(tree));
+    }
+
+    @Test
+    void negationsParseAndEvaluate() {
+        LogicTree even = assertDoesNotThrow(() -> new LogicTree(negations(DEPTH), "A"));
+        assertEquals(ConditionalValidity.TRUE, even.evaluate());
+        assertEquals(ConditionalValidity.FALSE, new LogicTree(negations(DEPTH + 1), "A").evaluate());
+        assertEquals(ConditionalValidity.UNKNOWN, new LogicTree(negations(DEPTH)).evaluate());
+    }
+
+    @Test
+    void negationsPrintAndWriteBack() {
+        LogicTree tree = new LogicTree(negations(DEPTH));
+
+        assertEquals("~".repeat(DEPTH) + "A", tree.getExpressionString());
+        assertEquals(DEPTH, tree.operatorColumns().size());
+
+        String printed = assertDoesNotThrow(tree::getTreeString);
+        assertEquals(DEPTH + 1, printed.lines().count());
+        assertDoesNotThrow(() -> printQuietly(tree));
+    }
+
+    private static void printQuietly(LogicTree tree) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            tree.printTree();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
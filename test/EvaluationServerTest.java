@@ -0,0 +1,157 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluationServerTest {
+    @TempDir
+    Path directory;
+
+    private EvaluationServer server(ExpressionCache cache) throws IOException {
+        return new EvaluationServer(UnixDomainSocketAddress.of(directory.resolve("logic.sock")), cache);
+    }
+
+    // what the server answers is what a LogicTree says
+    private static String expected(String expression, String... predicates) {
+        return "OK\t" + new LogicTree(expression, predicates).evaluate() + "\n";
+    }
+
+    @Test
+    void evaluateAnswersWhatLogicTreeDoes() throws IOException {
+        try (EvaluationServer server = server(new ExpressionCache(1 << 20))) {
+            assertEquals(expected("P & ~(S ? Q)", "P", "Q > ~P"), server.handle("evaluate\tP & ~(S ? Q)\tP\tQ > ~P"));
+            assertEquals(expected("P & ~(S ? Q)", "P", "Q > ~P", "~S"), server.handle("evaluate\tp & ~(s ? q)\tp\tq > ~p\t~s"));
+            assertEquals(expected("P & Q"), server.handle("evaluate\tP & Q"));
+        }
+    }
+
+    @Test
+    void errorsAreRepliedAndNotCached() throws IOException {
+        ExpressionCache cache = new ExpressionCache(1 << 20);
+        try (EvaluationServer server = server(cache)) {
+            assertTrue(server.handle("evaluate\tP & (Q").startsWith("ERROR\t"));
+            assertTrue(server.handle("evaluate\tP & (Q").startsWith("ERROR\t"));
+            assertTrue(server.handle("table\tP & (Q").startsWith("ERROR\t"));
+            assertEquals(0, cache.size());
+
+            assertEquals("ERROR\tInvalid if-then predicate: X39>\n", server.handle("evaluate\tP & Q\tP\tX39>"));
+            assertTrue(server.handle("frobnicate\tP").startsWith("ERROR\tUnknown command"));
+            assertTrue(server.handle("evaluate\t ").startsWith("ERROR\tMissing expression"));
+            assertEquals(6, server.getMetrics().errors());
+        }
+    }
+
+    @Test
+    void tableIsCachedAndCapped() throws IOException {
+        ExpressionCache cache = new ExpressionCache(1 << 20);
+        try (EvaluationServer server = server(cache)) {
+            String table = server.handle("table\tP & ~(S ? Q)\tP");
+            assertTrue(table.startsWith("OK\t5\n"), table);
+            assertEquals(table, server.handle("table\tP&~(S?Q)\tP"));
+            assertEquals(1, cache.hitCount());
+
+            StringBuilder wide = new StringBuilder("V0");
+            for (int i = 1; i <= EvaluationServer.MAX_TABLE_UNKNOWNS; i++) wide.append(" & V").append(i);
+            assertTrue(server.handle("table\t" + wide).startsWith("ERROR\tTruth table of " + (EvaluationServer.MAX_TABLE_UNKNOWNS + 1)));
+        }
+    }
+
+    /*
+     * lots of requests for one expression at once, each with its own predicates: every one gets its own answer,
+     * and every request either led a batch or was answered by one
+     * */
+    @Test
+    void concurrentRequestsForOneExpressionGetTheirOwnAnswers() throws Exception {
+        String expression = "(A & B) ? (C & ~D)";
+        String[][] predicateSets = {{}, {"A", "B"}, {"~A", "C"}, {"C", "~D"}, {"A>B", "A"}, {"C=D", "~C"}, {"A", "~A"}};
+        int requests = 2000;
+        try (EvaluationServer server = server(new ExpressionCache(1 << 20));
+             ExecutorService threads = Executors.newFixedThreadPool(16)) {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                String[] predicates = predicateSets[i % predicateSets.length];
+                String request = "evaluate\t" + expression + (predicates.length == 0 ? "" : "\t" + String.join("\t", predicates));
+                answers.add(threads.submit(() -> {
+                    go.await();
+                    return server.handle(request);
+                }));
+            }
+            go.countDown();
+            for (int i = 0; i < requests; i++) {
+                assertEquals(expected(expression, predicateSets[i % predicateSets.length]), answers.get(i).get());
+            }
+            EvaluationServer.RequestMetrics metrics = server.getMetrics();
+            assertEquals(requests, metrics.batches() + metrics.batched());
+        }
+    }
+
+    @Test
+    void servesOverTheSocket() throws Exception {
+        try (EvaluationServer server = server(new ExpressionCache(1 << 20))) {
+            Thread accepting = Thread.ofVirtual().start(server::run);
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                OutputStream out = Channels.newOutputStream(client);
+                BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+
+                out.write("evaluate\tP & Q\tP\tQ\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("OK\tTRUE", in.readLine());
+
+                byte[] request = "evaluate\tP & Q\t~P".getBytes(StandardCharsets.UTF_8);
+                out.write((request.length + "\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(request);
+                assertEquals("9", in.readLine());
+                assertEquals("OK\tFALSE", in.readLine());
+
+                // no newline ever: cut off at the limit, answered and closed
+                byte[] endless = new byte[EvaluationServer.MAX_REQUEST_BYTES + 1];
+                Arrays.fill(endless, (byte) 'A');
+                out.write(endless);
+                assertTrue(in.readLine().startsWith("ERROR\tRequest line is over"));
+                assertEquals(null, in.readLine());
+            }
+            server.close();
+            accepting.join();
+        }
+    }
+
+    @Test
+    void onlyReplacesAStaleSocket() throws IOException {
+        Path file = directory.resolve("rules.txt");
+        Files.writeString(file, "P & Q\n");
+        assertThrows(IOException.class, () -> new EvaluationServer(UnixDomainSocketAddress.of(file), new ExpressionCache(16)));
+        assertEquals("P & Q\n", Files.readString(file));
+
+        // a socket whose server went away without cleaning up
+        Path stale = directory.resolve("stale.sock");
+        try (ServerSocketChannel old = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            old.bind(UnixDomainSocketAddress.of(stale));
+        }
+        assertTrue(Files.exists(stale));
+        try (EvaluationServer server = new EvaluationServer(UnixDomainSocketAddress.of(stale), new ExpressionCache(16))) {
+            assertEquals(UnixDomainSocketAddress.of(stale), server.getLocalAddress());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * every sequence of changes has to end up where a fresh LogicTree with the predicates still in force does
+ * */
+class IncrementalEvaluatorTest {
+    static final String EXPRESSION = "(A & B) ? (~C & (D ? E)) & (F ? ~G) ? H";
+    static final String[] VARIABLES = {"A", "B", "C", "D", "E", "F", "G", "H"};
+
+    @Test
+    void predicateThatDoesNotParseLeavesItsVariablesReadable() {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator("A & B");
+        assertFalse(evaluator.assertPredicate("X39>"));
+        assertEquals(ConditionalValidity.UNKNOWN, evaluator.get("X39"));
+
+        // and the evaluator still works afterwards
+        assertTrue(evaluator.assertPredicate("X39 > A"));
+        evaluator.set("X39", ConditionalValidity.TRUE);
+        assertEquals(ConditionalValidity.TRUE, evaluator.get("A"));
+    }
+
+    @Test
+    void settingAgainReplacesTheEarlierSet() {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator("A & B");
+        evaluator.assertPredicate("A=B");
+        evaluator.set("A", ConditionalValidity.TRUE);
+        evaluator.set("A", ConditionalValidity.FALSE);
+        assertMatchesFreshTree(evaluator, "A & B", List.of("A=B"), Map.of("A", ConditionalValidity.FALSE), new String[]{"A", "B"});
+
+        // nothing of the first set is left to come back
+        assertTrue(evaluator.unset("A"));
+        assertMatchesFreshTree(evaluator, "A & B", List.of("A=B"), Map.of(), new String[]{"A", "B"});
+        assertFalse(evaluator.unset("A"));
+    }
+
+    @Test
+    void retractUndoesOnlyThatPredicate() {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(EXPRESSION);
+        evaluator.assertPredicate("A");
+        evaluator.assertPredicate("A > B");
+        evaluator.assertPredicate("B = ~C");
+        evaluator.assertPredicate("D");
+        assertMatchesFreshTree(evaluator, List.of("A", "A>B", "B=~C", "D"), Map.of());
+
+        // from the middle, the ones after it are replayed
+        assertTrue(evaluator.retract("A>B"));
+        assertMatchesFreshTree(evaluator, List.of("A", "B=~C", "D"), Map.of());
+        assertFalse(evaluator.retract("A>B"));
+
+        evaluator.set("B", ConditionalValidity.TRUE);
+        assertMatchesFreshTree(evaluator, List.of("A", "B=~C", "D"), Map.of("B", ConditionalValidity.TRUE));
+        assertTrue(evaluator.retract("A"));
+        assertMatchesFreshTree(evaluator, List.of("B=~C", "D"), Map.of("B", ConditionalValidity.TRUE));
+        assertTrue(evaluator.unset("B"));
+        assertMatchesFreshTree(evaluator, List.of("B=~C", "D"), Map.of());
+        assertEquals(List.of("B=~C", "D"), evaluator.getPredicates());
+    }
+
+    /*
+     * random asserts, retracts, sets and unsets. the predicates are all true in one hidden assignment so nothing ever
+     * contradicts (then the order things are applied in can't matter), except for sets made to the wrong value on purpose,
+     * which are always set again or unset before the values are compared
+     * */
+    @Test
+    void randomChangesMatchAFreshTree() {
+        Random random = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            boolean[] model = new boolean[VARIABLES.length];
+            for (int v = 0; v < model.length; v++) model[v] = random.nextBoolean();
+
+            IncrementalEvaluator evaluator = new IncrementalEvaluator(EXPRESSION);
+            List<String> predicates = new ArrayList<>();
+            Map<String, ConditionalValidity> sets = new LinkedHashMap<>();
+            Map<String, Boolean> wrong = new LinkedHashMap<>();
+            for (int step = 0; step < 40; step++) {
+                int choice = random.nextInt(10);
+                if (choice < 5) {
+                    String predicate = truePredicate(random, model);
+                    assertTrue(evaluator.assertPredicate(predicate));
+                    predicates.add(predicate);
+                } else if (choice < 7 && !predicates.isEmpty()) {
+                    String predicate = predicates.get(random.nextInt(predicates.size()));
+                    assertTrue(evaluator.retract(predicate));
+                    predicates.remove(predicates.lastIndexOf(predicate));
+                } else if (choice < 9) {
+                    int v = random.nextInt(VARIABLES.length);
+                    boolean right = random.nextInt(3) > 0;
+                    ConditionalValidity value = model[v] == right ? ConditionalValidity.TRUE : ConditionalValidity.FALSE;
+                    evaluator.set(VARIABLES[v], value);
+                    sets.remove(VARIABLES[v]);//set again goes to the end, like the evaluator's own
+                    sets.put(VARIABLES[v], value);
+                    wrong.put(VARIABLES[v], !right);
+                } else if (!sets.isEmpty()) {
+                    String variable = new ArrayList<>(sets.keySet()).get(random.nextInt(sets.size()));
+                    assertTrue(evaluator.unset(variable));
+                    sets.remove(variable);
+                    wrong.remove(variable);
+                }
+                if (!wrong.containsValue(true)) assertMatchesFreshTree(evaluator, predicates, sets);
+            }
+        }
+    }
+
+    // "P", "~P", "P>Q" or "P=Q" over the variables, true when they hold the model's values
+    private static String truePredicate(Random random, boolean[] model) {
+        int a = random.nextInt(VARIABLES.length), b = random.nextInt(VARIABLES.length);
+        boolean negateA = random.nextBoolean(), negateB = random.nextBoolean();
+        boolean valueA = model[a] != negateA, valueB = model[b] != negateB;
+        String literalA = (negateA ? "~" : "") + VARIABLES[a], literalB = (negateB ? "~" : "") + VARIABLES[b];
+        switch (random.nextInt(3)) {
+            case 0:
+                return valueA ? literalA : (negateA ? "" : "~") + VARIABLES[a];
+            case 1:
+                if (!valueA || valueB) return literalA + ">" + literalB;
+                return literalB + ">" + literalA;
+            default:
+                if (valueA == valueB) return literalA + "=" + literalB;
+                return literalA + "=" + (negateB ? "" : "~") + VARIABLES[b];
+        }
+    }
+
+    private static void assertMatchesFreshTree(IncrementalEvaluator evaluator, List<String> predicates, Map<String, ConditionalValidity> sets) {
+        assertMatchesFreshTree(evaluator, EXPRESSION, predicates, sets, VARIABLES);
+    }
+
+    // set(P, TRUE) and set(P, FALSE) are the predicates P and ~P to a LogicTree
+    private static void assertMatchesFreshTree(IncrementalEvaluator evaluator, String expression, List<String> predicates,
+                                               Map<String, ConditionalValidity> sets, String[] variables) {
+        List<String> all = new ArrayList<>(predicates);
+        sets.forEach((variable, value) -> all.add((value == ConditionalValidity.FALSE ? "~" : "") + variable));
+        LogicTree tree = new LogicTree(expression, all.toArray(new String[0]));
+        String state = "predicates " + predicates + " sets " + sets;
+        assertEquals(tree.evaluate(), evaluator.evaluate(), state);
+        byte[] assignment = tree.getAssignment();
+        for (String variable : variables) {
+            int id = tree.getSymbols().lookup(variable);
+            assertEquals(CompiledExpression.VALUES[assignment[id]], evaluator.get(variable), variable + " with " + state);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.List;
+import java.util.Random;
+
+/*
+ * random expressions and predicates over a handful of variables, and LogicTree as the oracle:
+ * a row is every variable pinned down by a "P" or "~P" predicate, so plain LogicTree.evaluate() says what the row comes out as
+ * */
+final class RandomExpressions {
+    private RandomExpressions() {
+    }
+
+    static String[] names(int variables) {
+        String[] names = new String[variables];
+        for (int v = 0; v < variables; v++) names[v] = String.valueOf((char) ('A' + v));
+        return names;
+    }
+
+    // any operator the parser reads, at any depth
+    static String expression(Random random, String[] names, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            return (random.nextInt(3) == 0 ? "~" : "") + names[random.nextInt(names.length)];
+        }
+        String left = expression(random, names, depth - 1), right = expression(random, names, depth - 1);
+        String joined = switch (random.nextInt(5)) {
+            case 0, 1 -> left + " & " + right;
+            case 2, 3 -> left + " ? " + right;
+            default -> left + (random.nextBoolean() ? " > " : " = ") + right;
+        };
+        return random.nextInt(3) == 0 ? "~(" + joined + ")" : "(" + joined + ")";
+    }
+
+    // "P", "~P", "P>~Q", "~P=Q" ... anything PredicatePropagator reads
+    static String predicate(Random random, String[] names) {
+        String a = (random.nextBoolean() ? "~" : "") + names[random.nextInt(names.length)];
+        String b = (random.nextBoolean() ? "~" : "") + names[random.nextInt(names.length)];
+        return switch (random.nextInt(3)) {
+            case 0 -> a;
+            case 1 -> a + ">" + b;
+            default -> a + "=" + b;
+        };
+    }
+    static String[] predicates(Random random, String[] names, int max) {
+        String[] predicates = new String[random.nextInt(max + 1)];
+        for (int i = 0; i < predicates.length; i++) predicates[i] = predicate(random, names);
+        return predicates;
+    }
+
+    // bit v of row is the value of names[v]
+    static String[] row(String[] names, long row) {
+        String[] literals = new String[names.length];
+        for (int v = 0; v < names.length; v++) literals[v] = ((row >> v & 1) == 1 ? "" : "~") + names[v];
+        return literals;
+    }
+
+    // predicates that give the variable the value: none for UNKNOWN, both P and ~P for INVALID
+    static void set(List<String> predicates, String name, ConditionalValidity value) {
+        if (value == ConditionalValidity.TRUE || value == ConditionalValidity.INVALID) predicates.add(name);
+        if (value == ConditionalValidity.FALSE || value == ConditionalValidity.INVALID) predicates.add("~" + name);
+    }
+
+    // what the expression comes out as with every variable set as in the row
+    static ConditionalValidity evaluate(String expression, String[] names, long row) {
+        return new LogicTree(expression, row(names, row)).evaluate();
+    }
+    // the row keeps every predicate, each read as the expression it stands for
+    static boolean keeps(String[] predicates, String[] names, long row) {
+        for (String predicate : predicates) {
+            if (evaluate(predicate, names, row) != ConditionalValidity.TRUE) return false;
+        }
+        return true;
+    }
+}
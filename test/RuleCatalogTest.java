@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RuleCatalogTest {
+    private static final String[] NAMES = RandomExpressions.names(5);
+
+    @TempDir
+    Path directory;
+
+    // every rule reads back as it went in and evaluates to what LogicTree says, with its own values and with every row
+    @Test
+    void writtenRulesReadBackAndEvaluateLikeLogicTree() throws IOException {
+        Random random = new Random(21);
+        List<String> expressions = new ArrayList<>();
+        List<String[]> predicates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            expressions.add(RandomExpressions.expression(random, NAMES, 4));
+            predicates.add(RandomExpressions.predicates(random, NAMES, 3));
+        }
+        // past the ids that fit in one byte, so PUSH_WIDE is written and read too
+        StringBuilder wide = new StringBuilder("V0");
+        for (int i = 1; i < 300; i++) wide.append(i % 2 == 0 ? " & V" : " ? ~V").append(i);
+        expressions.add(wide.toString());
+        predicates.add(new String[]{"V299", "~V298", "V1 > V0"});
+
+        Path path = directory.resolve("rules.ltc");
+        try (RuleCatalog.Writer writer = RuleCatalog.writer(path)) {
+            for (int i = 0; i < expressions.size(); i++) writer.add("rule-" + i + "-ü", new LogicTree(expressions.get(i), predicates.get(i)));
+        }
+        RuleCatalog catalog = RuleCatalog.open(path);
+        RuleCatalog wrapped = RuleCatalog.wrap(ByteBuffer.wrap(Files.readAllBytes(path)));
+        assertEquals(expressions.size(), catalog.size());
+        assertEquals(expressions.size(), wrapped.size());
+
+        for (int i = 0; i < expressions.size(); i++) {
+            String expression = expressions.get(i);
+            LogicTree tree = new LogicTree(expression, predicates.get(i));
+            SymbolTable symbols = tree.getSymbols();
+            String message = expression + " with " + String.join(", ", predicates.get(i));
+            assertEquals("rule-" + i + "-ü", catalog.name(i));
+            assertEquals(symbols.size(), catalog.variableCount(i));
+            for (int id = 0; id < symbols.size(); id++) assertEquals(symbols.name(id), catalog.variableName(i, id));
+            assertArrayEquals(tree.getAssignment(), catalog.getAssignment(i), message);
+            assertEquals(tree.evaluate(), catalog.evaluate(i), message);
+            assertEquals(tree.evaluate(), wrapped.evaluate(i), message);
+            if (i >= expressions.size() - 1) continue;
+
+            for (int row = 0; row < 1 << NAMES.length; row++) {
+                byte[] assignment = new byte[symbols.size()];
+                for (int id = 0; id < assignment.length; id++) {
+                    int v = symbols.name(id).charAt(0) - 'A';
+                    assignment[id] = (row >> v & 1) == 1 ? CompiledExpression.TRUE : CompiledExpression.FALSE;
+                }
+                assertEquals(RandomExpressions.evaluate(expression, NAMES, row), catalog.evaluate(i, assignment), message + " row " + row);
+            }
+        }
+    }
+
+    @Test
+    void refusesWhatIsNotACatalogue() throws IOException {
+        Path path = directory.resolve("rules.ltc");
+        try (RuleCatalog.Writer writer = RuleCatalog.writer(path)) {
+            writer.add("only", new LogicTree("P & Q", "P"));
+        }
+        byte[] bytes = Files.readAllBytes(path);
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[7] = (byte) (RuleCatalog.VERSION + 1);
+        assertThrows(IOException.class, () -> RuleCatalog.wrap(ByteBuffer.wrap(otherVersion)));
+        byte[] notOne = bytes.clone();
+        notOne[0] = 'X';
+        assertThrows(IOException.class, () -> RuleCatalog.wrap(ByteBuffer.wrap(notOne)));
+        assertThrows(IOException.class, () -> RuleCatalog.wrap(ByteBuffer.wrap(bytes, 0, bytes.length - 4).slice()));
+        assertThrows(IndexOutOfBoundsException.class, () -> RuleCatalog.wrap(ByteBuffer.wrap(bytes)).evaluate(1));
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SatSolverTest {
+    // checkSatisfiable and isTautology against every row of the truth table, worked out by LogicTree
+    @Test
+    void matchesTheTruthTable() {
+        Random random = new Random(6);
+        String[] names = RandomExpressions.names(5);
+        int unsatisfiable = 0, tautologies = 0;
+        for (int round = 0; round < 300; round++) {
+            String expression = RandomExpressions.expression(random, names, 4);
+            String[] predicates = RandomExpressions.predicates(random, names, 3);
+            boolean satisfiable = false, tautology = true;
+            for (long row = 0; row < 1L << names.length; row++) {
+                if (!RandomExpressions.keeps(predicates, names, row)) continue;
+                boolean holds = RandomExpressions.evaluate(expression, names, row) == ConditionalValidity.TRUE;
+                satisfiable |= holds;
+                tautology &= holds;
+            }
+            if (!satisfiable) unsatisfiable++;
+            if (tautology) tautologies++;
+            String message = expression + " with " + String.join(", ", predicates);
+            LogicTree tree = new LogicTree(expression, predicates);
+            Map<String, Boolean> model = tree.checkSatisfiable();
+            assertEquals(satisfiable, model != null, message);
+            assertEquals(tautology, tree.isTautology(), message);
+
+            if (model != null) {
+                // the model has to be a row that works, variables it leaves out can be anything
+                long row = 0;
+                for (int v = 0; v < names.length; v++) {
+                    if (model.getOrDefault(names[v], false)) row |= 1L << v;
+                }
+                assertTrue(RandomExpressions.keeps(predicates, names, row), message + ": " + model);
+                assertEquals(ConditionalValidity.TRUE, RandomExpressions.evaluate(expression, names, row), message + ": " + model);
+            }
+        }
+        // both answers came up often enough to mean something
+        assertTrue(unsatisfiable > 10 && tautologies > 10, unsatisfiable + " unsatisfiable, " + tautologies + " tautologies");
+    }
+
+    // random 3-SAT around the hard ratio, enough conflicts for learning and restarts, against trying every assignment
+    @Test
+    void solverMatchesBruteForce() {
+        Random random = new Random(60);
+        int variables = 12, satisfiable = 0;
+        for (int round = 0; round < 200; round++) {
+            List<int[]> clauses = new ArrayList<>();
+            for (int c = 0; c < 51; c++) {
+                int[] clause = new int[3];
+                for (int i = 0; i < 3; i++) clause[i] = (random.nextInt(variables) + 1) * (random.nextBoolean() ? 1 : -1);
+                clauses.add(clause);
+            }
+            boolean expected = false;
+            for (int assignment = 0; assignment < 1 << variables && !expected; assignment++) {
+                expected = satisfies(clauses, assignment);
+            }
+
+            SatSolver solver = new SatSolver();
+            for (int v = 0; v < variables; v++) solver.newVariable();
+            for (int[] clause : clauses) solver.addClause(clause);
+            assertEquals(expected, solver.solve(), "round " + round);
+            if (expected) {
+                satisfiable++;
+                int assignment = 0;
+                for (int v = 1; v <= variables; v++) {
+                    if (solver.modelValue(v)) assignment |= 1 << (v - 1);
+                }
+                assertTrue(satisfies(clauses, assignment), "round " + round);
+            }
+        }
+        assertTrue(satisfiable > 20 && satisfiable < 180, satisfiable + " of 200 satisfiable");
+    }
+
+    private static boolean satisfies(List<int[]> clauses, int assignment) {
+        for (int[] clause : clauses) {
+            boolean satisfied = false;
+            for (int literal : clause) {
+                boolean value = (assignment >> (Math.abs(literal) - 1) & 1) == 1;
+                satisfied |= literal > 0 == value;
+            }
+            if (!satisfied) return false;
+        }
+        return true;
+    }
+}
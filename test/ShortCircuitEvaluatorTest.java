@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShortCircuitEvaluatorTest {
+    private static final String[] NAMES = RandomExpressions.names(5);
+    private static final ConditionalValidity[] VALUES = ConditionalValidity.values();
+
+    @Test
+    void settledValuesMatchLogicTree() {
+        Random random = new Random(22);
+        for (int round = 0; round < 500; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 5);
+            String[] predicates = RandomExpressions.predicates(random, NAMES, 4);
+            LogicTree tree = new LogicTree(expression, predicates);
+            assertEquals(tree.evaluate(), tree.shortCircuit().evaluate(), expression + " with " + String.join(", ", predicates));
+        }
+    }
+
+    /*
+     * every four valued assignment of the variables, more than once round and in a different order the second time,
+     * so the operands have been reordered in between and the answers still have to be LogicTree's
+     * */
+    @Test
+    void everyAssignmentMatchesLogicTreeAcrossReorders() {
+        Random random = new Random(220);
+        for (int round = 0; round < 60; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 5);
+            LogicTree tree = new LogicTree(expression);
+            SymbolTable symbols = tree.getSymbols();
+            int combinations = 1 << (2 * symbols.size());
+            byte[][] assignments = new byte[combinations][symbols.size()];
+            ConditionalValidity[] expected = new ConditionalValidity[combinations];
+            for (int combination = 0; combination < combinations; combination++) {
+                List<String> predicates = new ArrayList<>();
+                for (int id = 0; id < symbols.size(); id++) {
+                    ConditionalValidity value = VALUES[combination >> (2 * id) & 3];
+                    assignments[combination][id] = (byte) value.ordinal();
+                    RandomExpressions.set(predicates, symbols.name(id), value);
+                }
+                expected[combination] = new LogicTree(expression, predicates.toArray(new String[0])).evaluate();
+            }
+
+            ShortCircuitEvaluator evaluator = tree.shortCircuit();
+            int evaluations = 0;
+            for (int pass = 0; evaluations < 3 * ShortCircuitEvaluator.REORDER_INTERVAL; pass++) {
+                for (int i = 0; i < combinations; i++, evaluations++) {
+                    int combination = pass % 2 == 0 ? i : (int) ((i * 0x9E3779B1L) % combinations);//odd step, so every one once
+                    assertEquals(expected[combination], evaluator.evaluate(assignments[combination]), expression + " #" + combination);
+                }
+            }
+            assertTrue(evaluator.nodesVisited() <= (long) evaluator.nodeCount() * evaluator.evaluations());
+        }
+    }
+}
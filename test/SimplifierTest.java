@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimplifierTest {
+    private static final String[] NAMES = RandomExpressions.names(4);
+    private static final ConditionalValidity[] VALUES = ConditionalValidity.values();
+
+    // same answer and the same partial truth table, whatever the predicates leave unknown or make INVALID
+    @Test
+    void sameAnswersAsTheOriginal() {
+        Random random = new Random(17);
+        for (int round = 0; round < 500; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 4);
+            String[] predicates = RandomExpressions.predicates(random, NAMES, 3);
+            LogicTree original = new LogicTree(expression, predicates);
+            LogicTree simplified = new LogicTree(expression, predicates).simplify();
+            String message = expression + " with " + String.join(", ", predicates) + " -> " + simplified.getExpressionString();
+            assertEquals(original.evaluate(), simplified.evaluate(), message);
+            for (ConditionalValidity value : VALUES) {
+                assertEquals(original.countTruthTableRows(value), simplified.countTruthTableRows(value), message + " " + value);
+            }
+        }
+    }
+
+    /*
+     * the residual stands for the original under every assignment of what's left, in all four values:
+     * fix some variables, simplify, then give the rest every combination of TRUE, FALSE, UNKNOWN and INVALID.
+     * the residual can't go back through the parser (it pushes ~ inwards, which isn't the same in four values),
+     * so it's compiled and the rest are set in its assignment
+     * */
+    @Test
+    void residualAgreesUnderEveryFourValuedAssignment() {
+        Random random = new Random(170);
+        for (int round = 0; round < 200; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 4);
+            List<String> fixed = new ArrayList<>();
+            List<String> free = new ArrayList<>();
+            for (String name : NAMES) {
+                int choice = random.nextInt(VALUES.length + 2);
+                if (choice < VALUES.length && VALUES[choice] != ConditionalValidity.UNKNOWN) RandomExpressions.set(fixed, name, VALUES[choice]);
+                else free.add(name);
+            }
+            LogicTree simplified = new LogicTree(expression, fixed.toArray(new String[0])).simplify();
+            CompiledExpression residual = simplified.compile();
+
+            int combinations = 1 << (2 * free.size());
+            for (int combination = 0; combination < combinations; combination++) {
+                List<String> predicates = new ArrayList<>(fixed);
+                byte[] assignment = simplified.getAssignment();
+                for (int v = 0; v < free.size(); v++) {
+                    ConditionalValidity value = VALUES[combination >> (2 * v) & 3];
+                    RandomExpressions.set(predicates, free.get(v), value);
+                    int id = simplified.getSymbols().lookup(free.get(v));
+                    if (id >= 0) assignment[id] = (byte) value.ordinal();
+                }
+                assertEquals(new LogicTree(expression, predicates.toArray(new String[0])).evaluate(), residual.evaluate(assignment),
+                        expression + " -> " + simplified.getExpressionString() + " with " + predicates);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeArenaTest {
+    private static final String[] NAMES = RandomExpressions.names(5);
+
+    private static String table(LogicTree tree) throws IOException {
+        StringWriter out = new StringWriter();
+        tree.writePartialTruthTable(TruthTableWriter.csv(out));
+        return out.toString();
+    }
+
+    /*
+     * a compacted tree answers the same as one that never was, on the arena and after it's expanded again,
+     * and compacting an expanded tree a second time still does. with and without shared subexpressions
+     * */
+    @Test
+    void compactedTreesAnswerTheSame() throws IOException {
+        Random random = new Random(24);
+        for (int round = 0; round < 300; round++) {
+            String expression = RandomExpressions.expression(random, NAMES, 5);
+            String[] predicates = RandomExpressions.predicates(random, NAMES, 4);
+            String message = expression + " with " + String.join(", ", predicates);
+            boolean shared = round % 2 == 0;
+            LogicTree plain = shared ? LogicTree.withSharedSubexpressions(expression, predicates) : new LogicTree(expression, predicates);
+            ConditionalValidity value = plain.evaluate();
+
+            LogicTree tree = shared ? LogicTree.withSharedSubexpressions(expression, predicates) : new LogicTree(expression, predicates);
+            if (round % 3 == 0) tree.evaluate();//compacting before or after the first evaluate
+            tree.compact();
+            assertTrue(tree.isCompact());
+            assertEquals(value, tree.evaluate(), message);
+            assertArrayEquals(plain.getAssignment(), tree.getAssignment(), message);
+            assertTrue(tree.isCompact(), "evaluate() works on the arena");
+            // same node count, the compacted one also counts its variables' values
+            assertEquals(plain.getMemoryReport().split(":")[0], tree.getMemoryReport().split(":")[0], message);
+
+            // expanded again: the same tree, the same values in it
+            assertEquals(plain.getTreeString(), tree.getTreeString(), message);
+            assertFalse(tree.isCompact());
+            assertEquals(plain.getExpressionString(), tree.getExpressionString(), message);
+            assertEquals(table(plain), table(tree), message);
+            assertEquals(value, tree.evaluate(), message);
+
+            tree.compact();
+            assertEquals(value, tree.evaluate(), message);
+            assertEquals(plain.getTreeString(), tree.getTreeString(), message);
+        }
+    }
+
+    // the arena is built and taken apart without recursion
+    @Test
+    void deepTreesCompactAndExpand() {
+        int depth = DeepExpressionTest.DEPTH;
+        String expression = "~(".repeat(depth) + "A & B" + ")".repeat(depth);
+        LogicTree plain = new LogicTree(expression, "A", "~B");
+        LogicTree tree = new LogicTree(expression, "A", "~B").compact();
+        assertEquals(plain.evaluate(), tree.evaluate());
+        assertEquals(plain.getTreeString(), tree.getTreeString());
+    }
+}
@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TruthTableGeneratorTest {
+    private static String sequential(LogicTree tree) throws IOException {
+        StringWriter out = new StringWriter();
+        tree.writePartialTruthTable(TruthTableWriter.csv(out));
+        return out.toString();
+    }
+    private static String parallel(LogicTree tree, ForkJoinPool pool) throws IOException {
+        StringWriter out = new StringWriter();
+        tree.writePartialTruthTable(TruthTableWriter.csv(out), pool);
+        return out.toString();
+    }
+
+    // narrow tables go 64 words to a task, wide ones a word at a time, the rows come out the same either way
+    @Test
+    void parallelWritesTheSameRows() throws IOException {
+        String narrow = "(A & ~B) ? (C = D) ? (E > ~F) ? (G & H & ~I & J)";
+        StringBuilder wide = new StringBuilder("(V0 ? V1) & (V2 ? V3) & (V4 ? V5) & (V6 ? V7) & (V8 ? V9)");
+        for (int i = 0; i < 3000; i++) wide.append(" & ~V").append(i % 10);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String expression : new String[]{narrow, wide.toString()}) {
+                LogicTree tree = new LogicTree(expression, "~A");
+                assertEquals(sequential(tree), parallel(tree, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TruthTableWriterTest {
+    private static final byte T = (byte) ConditionalValidity.TRUE.ordinal(), F = (byte) ConditionalValidity.FALSE.ordinal(),
+            X = (byte) ConditionalValidity.INVALID.ordinal(), U = (byte) ConditionalValidity.UNKNOWN.ordinal();
+
+    // a header well over the 64K writeUTF could take, with a character that's more than one byte in UTF-8
+    @Test
+    void binaryTakesLongHeaders() throws IOException {
+        String[] headers = {"P", "ä".repeat(40000) + " & Q", "Q", "R", "S"};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TruthTableWriter writer = TruthTableWriter.binary(bytes);
+        writer.header(headers);
+        writer.row(new byte[]{T, F, X, U, T});
+        writer.finish();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("LTT2", new String(in.readNBytes(4), StandardCharsets.US_ASCII));
+        assertEquals(headers.length, in.readInt());
+        for (String header : headers) {
+            assertEquals(header, new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8));
+        }
+        assertArrayEquals(new byte[]{(byte) (T | F << 2 | X << 4 | U << 6), T}, in.readAllBytes());
+    }
+
+    @Test
+    void textAndCsvEndLinesTheSame() throws IOException {
+        StringWriter text = new StringWriter(), csv = new StringWriter();
+        for (TruthTableWriter writer : new TruthTableWriter[]{TruthTableWriter.text(text), TruthTableWriter.csv(csv)}) {
+            writer.header(new String[]{"P", "P & Q"});
+            writer.row(new byte[]{T, U});
+            writer.finish();
+        }
+        assertEquals("P | P & Q\nT | ?    \n", text.toString());
+        assertEquals("P,P & Q\nT,?\n", csv.toString());
+    }
+}
@@ -0,0 +1,79 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * ColumnKernel on LongVectors of the preferred width (4 longs with AVX2, 8 with AVX-512), the tail that doesn't fill
+ * a vector is done a long at a time. same expressions as ColumnKernel.Scalar, just lanewise.
+ *
+ * only built with mvn -Pvector, which adds this folder and --add-modules jdk.incubator.vector, see ColumnKernel
+ * */
+public final class VectorColumnKernel implements ColumnKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void load(long[] column, int offset, long[] t, long[] f, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            LongVector bits = LongVector.fromArray(SPECIES, column, offset + i);
+            bits.intoArray(t, i);
+            bits.not().intoArray(f, i);
+        }
+        for (; i < n; i++) {
+            t[i] = column[offset + i];
+            f[i] = ~column[offset + i];
+        }
+    }
+
+    @Override
+    public void and(long[] at, long[] af, long[] bt, long[] bf, long[] t, long[] f, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            LongVector a = LongVector.fromArray(SPECIES, at, i);
+            LongVector b = LongVector.fromArray(SPECIES, af, i);
+            LongVector c = LongVector.fromArray(SPECIES, bt, i);
+            LongVector d = LongVector.fromArray(SPECIES, bf, i);
+            LongVector isFalse = b.and(a.not()).or(d.and(c.not()));
+            LongVector isInvalid = isFalse.not().and(a.and(b).or(c.and(d)));
+            LongVector isTrue = a.and(b.not()).and(c.and(d.not()));
+            isTrue.or(isInvalid).intoArray(t, i);
+            isFalse.or(isInvalid).intoArray(f, i);
+        }
+        for (; i < n; i++) {
+            long a = at[i], b = af[i], c = bt[i], d = bf[i];
+            long isFalse = (b & ~a) | (d & ~c);
+            long isInvalid = ~isFalse & ((a & b) | (c & d));
+            t[i] = ((a & ~b) & (c & ~d)) | isInvalid;
+            f[i] = isFalse | isInvalid;
+        }
+    }
+
+    @Override
+    public void or(long[] at, long[] af, long[] bt, long[] bf, long[] t, long[] f, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            LongVector a = LongVector.fromArray(SPECIES, at, i);
+            LongVector b = LongVector.fromArray(SPECIES, af, i);
+            LongVector c = LongVector.fromArray(SPECIES, bt, i);
+            LongVector d = LongVector.fromArray(SPECIES, bf, i);
+            LongVector isTrue = a.and(b.not()).or(c.and(d.not()));
+            LongVector isUnknown = isTrue.not().and(a.not().and(b.not()).or(c.not().and(d.not())));
+            LongVector isInvalid = isTrue.not().and(isUnknown.not()).and(a.and(b).or(c.and(d)));
+            LongVector isFalse = b.and(a.not()).and(d.and(c.not()));
+            isTrue.or(isInvalid).intoArray(t, i);
+            isFalse.or(isInvalid).intoArray(f, i);
+        }
+        for (; i < n; i++) {
+            long a = at[i], b = af[i], c = bt[i], d = bf[i];
+            long isTrue = (a & ~b) | (c & ~d);
+            long isUnknown = ~isTrue & ((~a & ~b) | (~c & ~d));
+            long isInvalid = ~isTrue & ~isUnknown & ((a & b) | (c & d));
+            t[i] = isTrue | isInvalid;
+            f[i] = ((b & ~a) & (d & ~c)) | isInvalid;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "vector(" + SPECIES.length() + " lanes)";
+    }
+}